@@ -3,6 +3,28 @@ package com.gaga.redisutils;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gaga.redisutils.redisUtil.HotKeyDetector;
+import com.gaga.redisutils.redisUtil.LettuceTimeoutCustomizer;
+import com.gaga.redisutils.redisUtil.RedisDelayQueue;
+import com.gaga.redisutils.redisUtil.RedisHotKeyEndpoint;
+import com.gaga.redisutils.redisUtil.RedisLargeObject;
+import com.gaga.redisutils.redisUtil.RedisResilience;
+import com.gaga.redisutils.redisUtil.RedisWarmUp;
+import com.gaga.redisutils.redisUtil.RedisWarmUpHealthIndicator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -10,6 +32,10 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 /**
  * redisTemplate配置类
  * @Author fuGaga
@@ -17,6 +43,7 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
  * @Version 1.0
  */
 @Configuration
+@EnableConfigurationProperties(RedisUtilsProperties.class)
 public class RedisUtilsConfig {
 
         @Bean
@@ -44,4 +71,188 @@ public class RedisUtilsConfig {
                 template.afterPropertiesSet();
                 return template;
         }
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = "redis-utils.hot-key", name = "enabled", havingValue = "true")
+        public HotKeyDetector hotKeyDetector(RedisUtilsProperties properties) {
+                return new HotKeyDetector(properties.getHotKey());
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = "redis-utils.warm-up", name = "enabled", havingValue = "true")
+        public RedisWarmUp redisWarmUp(RedisUtilsProperties properties) {
+                return new RedisWarmUp(properties.getWarmUp());
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = "redis-utils.delay-queue", name = "enabled", havingValue = "true")
+        public RedisDelayQueue redisDelayQueue(RedisUtilsProperties properties) {
+                return new RedisDelayQueue(properties.getDelayQueue());
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = "redis-utils.resilience", name = "enabled", havingValue = "true")
+        public RedisResilience redisResilience(RedisUtilsProperties properties) {
+                return new RedisResilience(properties.getResilience());
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = "redis-utils.large-object", name = "enabled", havingValue = "true")
+        public RedisLargeObject redisLargeObject(RedisUtilsProperties properties) {
+                return new RedisLargeObject(properties.getLargeObject());
+        }
+
+        /**
+         * 热点key的actuator端点，classpath中有actuator时生效
+         */
+        @Configuration
+        @ConditionalOnClass(Endpoint.class)
+        @ConditionalOnProperty(prefix = "redis-utils.hot-key", name = "enabled", havingValue = "true")
+        static class HotKeyEndpointConfig {
+
+                @Bean
+                @ConditionalOnMissingBean
+                public RedisHotKeyEndpoint redisHotKeyEndpoint(HotKeyDetector hotKeyDetector) {
+                        return new RedisHotKeyEndpoint(hotKeyDetector);
+                }
+        }
+
+        /**
+         * 热点key的micrometer指标，classpath中有micrometer时生效
+         */
+        @Configuration
+        @ConditionalOnClass(MeterRegistry.class)
+        @ConditionalOnProperty(prefix = "redis-utils.hot-key", name = "enabled", havingValue = "true")
+        static class HotKeyMetricsConfig {
+
+                @Bean
+                public MeterBinder redisHotKeyMetrics(HotKeyDetector hotKeyDetector) {
+                        return registry -> {
+                                FunctionCounter.builder("redis.hotkey.sampled", hotKeyDetector, HotKeyDetector::getSampledReads)
+                                        .tag("op", "read").register(registry);
+                                FunctionCounter.builder("redis.hotkey.sampled", hotKeyDetector, HotKeyDetector::getSampledWrites)
+                                        .tag("op", "write").register(registry);
+                                FunctionCounter.builder("redis.hotkey.localcache.hits", hotKeyDetector, HotKeyDetector::getLocalCacheHits)
+                                        .register(registry);
+                                Gauge.builder("redis.hotkey.localcache.size", hotKeyDetector, HotKeyDetector::getLocalCacheSize)
+                                        .register(registry);
+                                Gauge.builder("redis.hotkey.hot", hotKeyDetector, detector -> detector.getLastReport().getReads().values()
+                                        .stream().filter(count -> count >= detector.getHotThreshold()).count())
+                                        .register(registry);
+                        };
+                }
+        }
+
+        /**
+         * 延迟队列的micrometer指标，classpath中有micrometer时生效。
+         * 到期到开始处理的延迟按队列记录为redis.delayqueue.lag计时器(次数即分发数)，失败按队列计数
+         */
+        @Configuration
+        @ConditionalOnClass(MeterRegistry.class)
+        @ConditionalOnProperty(prefix = "redis-utils.delay-queue", name = "enabled", havingValue = "true")
+        static class DelayQueueMetricsConfig {
+
+                @Bean
+                public MeterBinder redisDelayQueueMetrics(RedisDelayQueue redisDelayQueue) {
+                        return registry -> {
+                                Gauge.builder("redis.delayqueue.pending", redisDelayQueue, RedisDelayQueue::getPendingCount)
+                                        .register(registry);
+                                redisDelayQueue.setDispatchListener(new DelayQueueMeters(registry));
+                        };
+                }
+
+                /**
+                 * 按队列缓存计时器和计数器，避免每次分发都查找注册表
+                 */
+                private static final class DelayQueueMeters implements RedisDelayQueue.DispatchListener {
+
+                        private final MeterRegistry registry;
+                        private final Map<String, Timer> lags = new ConcurrentHashMap<>();
+                        private final Map<String, Counter> failures = new ConcurrentHashMap<>();
+
+                        private DelayQueueMeters(MeterRegistry registry) {
+                                this.registry = registry;
+                        }
+
+                        @Override
+                        public void onDispatched(String queue, long lagMillis) {
+                                lags.computeIfAbsent(queue, name -> Timer.builder("redis.delayqueue.lag")
+                                        .description("delay from due time to dispatch")
+                                        .tag("queue", name)
+                                        .publishPercentileHistogram()
+                                        .register(registry))
+                                        .record(lagMillis, TimeUnit.MILLISECONDS);
+                        }
+
+                        @Override
+                        public void onFailed(String queue) {
+                                failures.computeIfAbsent(queue, name -> Counter.builder("redis.delayqueue.failed")
+                                        .tag("queue", name)
+                                        .register(registry))
+                                        .increment();
+                        }
+                }
+        }
+
+        /**
+         * 按操作分类的Lettuce命令超时，使用Lettuce时生效；使用Jedis时超时由spring.redis.timeout控制
+         */
+        @Configuration
+        @ConditionalOnClass(name = "io.lettuce.core.TimeoutOptions")
+        @ConditionalOnProperty(prefix = "redis-utils.resilience", name = "enabled", havingValue = "true")
+        static class ResilienceLettuceConfig {
+
+                @Bean
+                @ConditionalOnMissingBean
+                public LettuceTimeoutCustomizer lettuceTimeoutCustomizer(RedisUtilsProperties properties,
+                                                                         ObjectProvider<RedisProperties> redisProperties) {
+                        return new LettuceTimeoutCustomizer(properties.getResilience(), redisProperties.getIfAvailable(RedisProperties::new));
+                }
+        }
+
+        /**
+         * 超时、熔断、隔离的micrometer指标，classpath中有micrometer时生效
+         */
+        @Configuration
+        @ConditionalOnClass(MeterRegistry.class)
+        @ConditionalOnProperty(prefix = "redis-utils.resilience", name = "enabled", havingValue = "true")
+        static class ResilienceMetricsConfig {
+
+                @Bean
+                public MeterBinder redisResilienceMetrics(RedisResilience redisResilience) {
+                        return registry -> {
+                                FunctionCounter.builder("redis.resilience.timeouts", redisResilience, RedisResilience::getTimeoutCount)
+                                        .register(registry);
+                                FunctionCounter.builder("redis.resilience.rejected", redisResilience, RedisResilience::getRejectedCount)
+                                        .register(registry);
+                                FunctionCounter.builder("redis.resilience.hedged", redisResilience, RedisResilience::getHedgedCount)
+                                        .register(registry);
+                                FunctionCounter.builder("redis.resilience.stale.hits", redisResilience, RedisResilience::getStaleHitCount)
+                                        .register(registry);
+                                Gauge.builder("redis.resilience.circuit.open", redisResilience,
+                                        resilience -> "CLOSED".equals(resilience.getCircuitState()) ? 0 : 1)
+                                        .register(registry);
+                        };
+                }
+        }
+
+        /**
+         * 预热健康检查，classpath中有actuator时生效
+         */
+        @Configuration
+        @ConditionalOnClass(HealthIndicator.class)
+        @ConditionalOnProperty(prefix = "redis-utils.warm-up", name = "enabled", havingValue = "true")
+        static class WarmUpHealthConfig {
+
+                @Bean
+                @ConditionalOnMissingBean(name = "redisWarmUpHealthIndicator")
+                public RedisWarmUpHealthIndicator redisWarmUpHealthIndicator(RedisWarmUp redisWarmUp) {
+                        return new RedisWarmUpHealthIndicator(redisWarmUp);
+                }
+        }
 }
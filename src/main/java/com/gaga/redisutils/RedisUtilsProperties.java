@@ -0,0 +1,553 @@
+package com.gaga.redisutils;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * redisUtils配置项，前缀redis-utils
+ * @Author fuGaga
+ * @Date 2021/5/18 14:30
+ * @Version 1.0
+ */
+@ConfigurationProperties(prefix = "redis-utils")
+public class RedisUtilsProperties {
+
+        /**热点key探测 */
+        private final HotKey hotKey = new HotKey();
+
+        /**启动预热 */
+        private final WarmUp warmUp = new WarmUp();
+
+        /**延迟队列 */
+        private final DelayQueue delayQueue = new DelayQueue();
+
+        /**超时、熔断、隔离 */
+        private final Resilience resilience = new Resilience();
+
+        /**大对象分块存储 */
+        private final LargeObject largeObject = new LargeObject();
+
+        public HotKey getHotKey() {
+                return hotKey;
+        }
+
+        public WarmUp getWarmUp() {
+                return warmUp;
+        }
+
+        public DelayQueue getDelayQueue() {
+                return delayQueue;
+        }
+
+        public Resilience getResilience() {
+                return resilience;
+        }
+
+        public LargeObject getLargeObject() {
+                return largeObject;
+        }
+
+        /**
+         * 热点key探测配置
+         */
+        public static class HotKey {
+
+                /**是否开启 */
+                private boolean enabled = false;
+                /**采样间隔，每sampleInterval次访问记录一次 */
+                private int sampleInterval = 16;
+                /**sketch每行计数器个数 */
+                private int sketchWidth = 4096;
+                /**sketch行数 */
+                private int sketchDepth = 4;
+                /**读、写各保留的热点key个数 */
+                private int topK = 20;
+                /**统计窗口，每个窗口输出一次报告并清零 */
+                private Duration reportInterval = Duration.ofSeconds(60);
+                /**窗口内访问次数达到该值才判定为热点key */
+                private long hotThreshold = 10000;
+                /**是否对热点key做本地短时缓存 */
+                private boolean localCacheEnabled = false;
+                /**本地缓存有效期 */
+                private Duration localCacheTtl = Duration.ofMillis(500);
+                /**本地缓存最大key个数 */
+                private int localCacheMaxSize = 1000;
+
+                public boolean isEnabled() {
+                        return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                        this.enabled = enabled;
+                }
+
+                public int getSampleInterval() {
+                        return sampleInterval;
+                }
+
+                public void setSampleInterval(int sampleInterval) {
+                        this.sampleInterval = sampleInterval;
+                }
+
+                public int getSketchWidth() {
+                        return sketchWidth;
+                }
+
+                public void setSketchWidth(int sketchWidth) {
+                        this.sketchWidth = sketchWidth;
+                }
+
+                public int getSketchDepth() {
+                        return sketchDepth;
+                }
+
+                public void setSketchDepth(int sketchDepth) {
+                        this.sketchDepth = sketchDepth;
+                }
+
+                public int getTopK() {
+                        return topK;
+                }
+
+                public void setTopK(int topK) {
+                        this.topK = topK;
+                }
+
+                public Duration getReportInterval() {
+                        return reportInterval;
+                }
+
+                public void setReportInterval(Duration reportInterval) {
+                        this.reportInterval = reportInterval;
+                }
+
+                public long getHotThreshold() {
+                        return hotThreshold;
+                }
+
+                public void setHotThreshold(long hotThreshold) {
+                        this.hotThreshold = hotThreshold;
+                }
+
+                public boolean isLocalCacheEnabled() {
+                        return localCacheEnabled;
+                }
+
+                public void setLocalCacheEnabled(boolean localCacheEnabled) {
+                        this.localCacheEnabled = localCacheEnabled;
+                }
+
+                public Duration getLocalCacheTtl() {
+                        return localCacheTtl;
+                }
+
+                public void setLocalCacheTtl(Duration localCacheTtl) {
+                        this.localCacheTtl = localCacheTtl;
+                }
+
+                public int getLocalCacheMaxSize() {
+                        return localCacheMaxSize;
+                }
+
+                public void setLocalCacheMaxSize(int localCacheMaxSize) {
+                        this.localCacheMaxSize = localCacheMaxSize;
+                }
+        }
+
+        /**
+         * 启动预热配置
+         */
+        public static class WarmUp {
+
+                /**是否开启 */
+                private boolean enabled = false;
+                /**是否在后台线程预热，后台预热时预热完成前redisWarmUp健康检查为OUT_OF_SERVICE */
+                private boolean async = false;
+                /**预先从连接池借出并校验的连接数，需配置连接池(如spring.redis.lettuce.pool)，不超过池的maxIdle */
+                private int connections = 4;
+                /**预加载的lua脚本资源，如classpath:lua/claim.lua */
+                private List<String> scripts = new ArrayList<>();
+                /**模拟读写的轮数，用于预热序列化器和JIT，0表示不执行 */
+                private int iterations = 2000;
+                /**模拟读写使用的key前缀 */
+                private String keyPrefix = "redis-utils:warm-up:";
+
+                public boolean isEnabled() {
+                        return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                        this.enabled = enabled;
+                }
+
+                public boolean isAsync() {
+                        return async;
+                }
+
+                public void setAsync(boolean async) {
+                        this.async = async;
+                }
+
+                public int getConnections() {
+                        return connections;
+                }
+
+                public void setConnections(int connections) {
+                        this.connections = connections;
+                }
+
+                public List<String> getScripts() {
+                        return scripts;
+                }
+
+                public void setScripts(List<String> scripts) {
+                        this.scripts = scripts;
+                }
+
+                public int getIterations() {
+                        return iterations;
+                }
+
+                public void setIterations(int iterations) {
+                        this.iterations = iterations;
+                }
+
+                public String getKeyPrefix() {
+                        return keyPrefix;
+                }
+
+                public void setKeyPrefix(String keyPrefix) {
+                        this.keyPrefix = keyPrefix;
+                }
+        }
+
+        /**
+         * 延迟队列配置
+         */
+        public static class DelayQueue {
+
+                /**是否开启 */
+                private boolean enabled = false;
+                /**队列key前缀，到期任务zset为prefix+队列名，已领取任务zset为prefix+队列名+":claimed" */
+                private String keyPrefix = "redis-utils:delay:";
+                /**每次最多领取的到期任务数 */
+                private int batchSize = 100;
+                /**最长轮询间隔，没有到期任务时最多休眠这么久 */
+                private Duration maxPollInterval = Duration.ofSeconds(1);
+                /**任务分发线程数 */
+                private int dispatchThreads = 8;
+                /**任务处理失败后重新投递的延迟 */
+                private Duration retryDelay = Duration.ofSeconds(5);
+                /**领取后超过该时长仍未确认的任务视为节点宕机，重新投递 */
+                private Duration claimTimeout = Duration.ofMinutes(5);
+                /**时间轮每格时长 */
+                private Duration tick = Duration.ofMillis(10);
+                /**时间轮格数，tick*wheelSize以内的本地任务由时间轮准时唤醒轮询 */
+                private int wheelSize = 512;
+
+                public boolean isEnabled() {
+                        return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                        this.enabled = enabled;
+                }
+
+                public String getKeyPrefix() {
+                        return keyPrefix;
+                }
+
+                public void setKeyPrefix(String keyPrefix) {
+                        this.keyPrefix = keyPrefix;
+                }
+
+                public int getBatchSize() {
+                        return batchSize;
+                }
+
+                public void setBatchSize(int batchSize) {
+                        this.batchSize = batchSize;
+                }
+
+                public Duration getMaxPollInterval() {
+                        return maxPollInterval;
+                }
+
+                public void setMaxPollInterval(Duration maxPollInterval) {
+                        this.maxPollInterval = maxPollInterval;
+                }
+
+                public int getDispatchThreads() {
+                        return dispatchThreads;
+                }
+
+                public void setDispatchThreads(int dispatchThreads) {
+                        this.dispatchThreads = dispatchThreads;
+                }
+
+                public Duration getRetryDelay() {
+                        return retryDelay;
+                }
+
+                public void setRetryDelay(Duration retryDelay) {
+                        this.retryDelay = retryDelay;
+                }
+
+                public Duration getClaimTimeout() {
+                        return claimTimeout;
+                }
+
+                public void setClaimTimeout(Duration claimTimeout) {
+                        this.claimTimeout = claimTimeout;
+                }
+
+                public Duration getTick() {
+                        return tick;
+                }
+
+                public void setTick(Duration tick) {
+                        this.tick = tick;
+                }
+
+                public int getWheelSize() {
+                        return wheelSize;
+                }
+
+                public void setWheelSize(int wheelSize) {
+                        this.wheelSize = wheelSize;
+                }
+        }
+
+        /**
+         * 超时、对冲读、熔断和并发隔离配置
+         */
+        public static class Resilience {
+
+                /**是否开启 */
+                private boolean enabled = false;
+                /**默认命令超时，使用Lettuce时作为驱动层的命令超时 */
+                private Duration defaultTimeout = Duration.ofMillis(500);
+                /**按操作分类(read/write/bulk)的命令超时，未配置的使用defaultTimeout */
+                private Map<String, Duration> timeouts = new HashMap<>();
+                /**默认每个操作分类的最大并发数 */
+                private int defaultMaxConcurrency = 64;
+                /**按操作分类(read/write/bulk/blocking)的最大并发数 */
+                private Map<String, Integer> maxConcurrency = new HashMap<>();
+                /**并发已满时最长等待时间，超过则快速失败 */
+                private Duration bulkheadMaxWait = Duration.ofMillis(10);
+                /**熔断的失败率阈值(百分比) */
+                private int failureRateThreshold = 50;
+                /**统计失败率的最近调用次数 */
+                private int slidingWindowSize = 100;
+                /**窗口内至少这么多次调用才计算失败率 */
+                private int minimumCalls = 20;
+                /**熔断打开后多久进入半开状态放行探测请求 */
+                private Duration openDuration = Duration.ofSeconds(5);
+                /**是否开启对冲读，需要名为replicaRedisTemplate的从库RedisTemplate */
+                private boolean hedgeEnabled = false;
+                /**主库读超过该百分位延迟仍未返回时向从库发起对冲读 */
+                private int hedgePercentile = 95;
+                /**对冲读的最小等待时间 */
+                private Duration hedgeMinDelay = Duration.ofMillis(5);
+                /**对冲读线程数，线程都忙时不对冲 */
+                private int hedgeThreads = 16;
+                /**是否在Redis不可用时使用本地缓存的旧值兜底读请求 */
+                private boolean staleCacheEnabled = false;
+                /**兜底缓存的最大条数 */
+                private int staleCacheMaxSize = 10000;
+                /**兜底缓存的有效期 */
+                private Duration staleCacheTtl = Duration.ofMinutes(5);
+
+                public boolean isEnabled() {
+                        return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                        this.enabled = enabled;
+                }
+
+                public Duration getDefaultTimeout() {
+                        return defaultTimeout;
+                }
+
+                public void setDefaultTimeout(Duration defaultTimeout) {
+                        this.defaultTimeout = defaultTimeout;
+                }
+
+                public Map<String, Duration> getTimeouts() {
+                        return timeouts;
+                }
+
+                public void setTimeouts(Map<String, Duration> timeouts) {
+                        this.timeouts = timeouts;
+                }
+
+                public int getDefaultMaxConcurrency() {
+                        return defaultMaxConcurrency;
+                }
+
+                public void setDefaultMaxConcurrency(int defaultMaxConcurrency) {
+                        this.defaultMaxConcurrency = defaultMaxConcurrency;
+                }
+
+                public Map<String, Integer> getMaxConcurrency() {
+                        return maxConcurrency;
+                }
+
+                public void setMaxConcurrency(Map<String, Integer> maxConcurrency) {
+                        this.maxConcurrency = maxConcurrency;
+                }
+
+                public Duration getBulkheadMaxWait() {
+                        return bulkheadMaxWait;
+                }
+
+                public void setBulkheadMaxWait(Duration bulkheadMaxWait) {
+                        this.bulkheadMaxWait = bulkheadMaxWait;
+                }
+
+                public int getFailureRateThreshold() {
+                        return failureRateThreshold;
+                }
+
+                public void setFailureRateThreshold(int failureRateThreshold) {
+                        this.failureRateThreshold = failureRateThreshold;
+                }
+
+                public int getSlidingWindowSize() {
+                        return slidingWindowSize;
+                }
+
+                public void setSlidingWindowSize(int slidingWindowSize) {
+                        this.slidingWindowSize = slidingWindowSize;
+                }
+
+                public int getMinimumCalls() {
+                        return minimumCalls;
+                }
+
+                public void setMinimumCalls(int minimumCalls) {
+                        this.minimumCalls = minimumCalls;
+                }
+
+                public Duration getOpenDuration() {
+                        return openDuration;
+                }
+
+                public void setOpenDuration(Duration openDuration) {
+                        this.openDuration = openDuration;
+                }
+
+                public boolean isHedgeEnabled() {
+                        return hedgeEnabled;
+                }
+
+                public void setHedgeEnabled(boolean hedgeEnabled) {
+                        this.hedgeEnabled = hedgeEnabled;
+                }
+
+                public int getHedgePercentile() {
+                        return hedgePercentile;
+                }
+
+                public void setHedgePercentile(int hedgePercentile) {
+                        this.hedgePercentile = hedgePercentile;
+                }
+
+                public Duration getHedgeMinDelay() {
+                        return hedgeMinDelay;
+                }
+
+                public void setHedgeMinDelay(Duration hedgeMinDelay) {
+                        this.hedgeMinDelay = hedgeMinDelay;
+                }
+
+                public int getHedgeThreads() {
+                        return hedgeThreads;
+                }
+
+                public void setHedgeThreads(int hedgeThreads) {
+                        this.hedgeThreads = hedgeThreads;
+                }
+
+                public boolean isStaleCacheEnabled() {
+                        return staleCacheEnabled;
+                }
+
+                public void setStaleCacheEnabled(boolean staleCacheEnabled) {
+                        this.staleCacheEnabled = staleCacheEnabled;
+                }
+
+                public int getStaleCacheMaxSize() {
+                        return staleCacheMaxSize;
+                }
+
+                public void setStaleCacheMaxSize(int staleCacheMaxSize) {
+                        this.staleCacheMaxSize = staleCacheMaxSize;
+                }
+
+                public Duration getStaleCacheTtl() {
+                        return staleCacheTtl;
+                }
+
+                public void setStaleCacheTtl(Duration staleCacheTtl) {
+                        this.staleCacheTtl = staleCacheTtl;
+                }
+
+                /**
+                 * 获取操作分类的超时
+                 */
+                public Duration timeoutOf(String operation) {
+                        return timeouts.getOrDefault(operation, defaultTimeout);
+                }
+
+                /**
+                 * 获取操作分类的最大并发数
+                 */
+                public int maxConcurrencyOf(String operation) {
+                        return maxConcurrency.getOrDefault(operation, defaultMaxConcurrency);
+                }
+        }
+
+        /**
+         * 大对象分块存储配置
+         */
+        public static class LargeObject {
+
+                /**是否开启 */
+                private boolean enabled = false;
+                /**默认分块大小(字节) */
+                private int chunkSize = 512 * 1024;
+                /**写入过程中分块的临时过期时间，写入中断时残留的分块到期自动清理，单次写入必须在此时间内完成 */
+                private Duration pendingTtl = Duration.ofHours(1);
+
+                public boolean isEnabled() {
+                        return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                        this.enabled = enabled;
+                }
+
+                public int getChunkSize() {
+                        return chunkSize;
+                }
+
+                public void setChunkSize(int chunkSize) {
+                        this.chunkSize = chunkSize;
+                }
+
+                public Duration getPendingTtl() {
+                        return pendingTtl;
+                }
+
+                public void setPendingTtl(Duration pendingTtl) {
+                        this.pendingTtl = pendingTtl;
+                }
+        }
+}
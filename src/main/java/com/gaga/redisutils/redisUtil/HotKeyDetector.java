@@ -0,0 +1,312 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端热点key探测
+ * <p>
+ * RedisTemplateService的读写按采样间隔记录到读、写两个{@link HotKeySketch}中，
+ * 每个统计窗口结束时输出热点key报告并清零；可选对热点key的读结果做本地短时缓存，减轻单个分片压力。
+ * 本地缓存存取时都复制Map/List/Set，调用方修改返回值不会影响缓存；其他可变类型不缓存。
+ * RedisBatch、RedisLargeObject、RedisDelayQueue的写也通过{@link #recordWrite(String)}使本地缓存失效
+ *
+ * @Author fuGaga
+ * @Date 2021/5/18 14:40
+ * @Version 1.0
+ */
+public class HotKeyDetector implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HotKeyDetector.class);
+
+    private final RedisUtilsProperties.HotKey properties;
+
+    private final HotKeySketch reads;
+    private final HotKeySketch writes;
+
+    /**被采样记录的读、写次数 */
+    private final LongAdder sampledReads = new LongAdder();
+    private final LongAdder sampledWrites = new LongAdder();
+
+    /**本地缓存 */
+    private final ConcurrentHashMap<String, CacheEntry> localCache = new ConcurrentHashMap<>();
+    private final LongAdder localCacheHits = new LongAdder();
+
+    /**上一个窗口的热点key */
+    private volatile Set<String> hotKeys = Collections.emptySet();
+    /**上一个窗口的报告 */
+    private volatile Report lastReport = new Report(0, Collections.emptyMap(), Collections.emptyMap());
+
+    private ScheduledExecutorService reporter;
+
+    public HotKeyDetector(final RedisUtilsProperties.HotKey properties) {
+        if (properties.getSampleInterval() <= 0) {
+            throw new IllegalArgumentException("redis-utils.hot-key.sample-interval must be positive");
+        }
+        this.properties = properties;
+        this.reads = new HotKeySketch(properties.getSketchWidth(), properties.getSketchDepth(), properties.getTopK());
+        this.writes = new HotKeySketch(properties.getSketchWidth(), properties.getSketchDepth(), properties.getTopK());
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        long interval = properties.getReportInterval().toMillis();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-hot-key-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+
+    /**
+     * 记录一次读
+     *
+     * @param key Redis键
+     */
+    public void recordRead(final String key) {
+        if (sampled()) {
+            sampledReads.increment();
+            reads.add(key, properties.getSampleInterval());
+        }
+    }
+
+    /**
+     * 记录一次写，同时使该key的本地缓存失效
+     *
+     * @param key Redis键
+     */
+    public void recordWrite(final String key) {
+        if (properties.isLocalCacheEnabled()) {
+            localCache.remove(key);
+        }
+        if (sampled()) {
+            sampledWrites.increment();
+            writes.add(key, properties.getSampleInterval());
+        }
+    }
+
+    /**
+     * 是否为热点key(上一个窗口达到阈值或当前窗口已达到阈值)
+     *
+     * @param key Redis键
+     * @return boolean
+     */
+    public boolean isHot(final String key) {
+        return hotKeys.contains(key) || reads.estimate(key) >= properties.getHotThreshold();
+    }
+
+    /**
+     * 从本地缓存获取热点key的值
+     *
+     * @param key Redis键
+     * @return 缓存值的副本，未缓存或已过期返回null
+     */
+    public Object getLocal(final String key) {
+        if (!properties.isLocalCacheEnabled()) {
+            return null;
+        }
+        CacheEntry entry = localCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.nanoTime()) {
+            localCache.remove(key, entry);
+            return null;
+        }
+        localCacheHits.increment();
+        return copyOf(entry.value);
+    }
+
+    /**
+     * 热点key的读结果的副本放入本地缓存，非热点key、无法复制的类型或缓存已满时忽略
+     *
+     * @param key   Redis键
+     * @param value 值
+     */
+    public void putLocal(final String key, final Object value) {
+        if (!properties.isLocalCacheEnabled() || value == null || !isHot(key)) {
+            return;
+        }
+        if (localCache.size() >= properties.getLocalCacheMaxSize() && !localCache.containsKey(key)) {
+            return;
+        }
+        Object copy = copyOf(value);
+        if (copy != null) {
+            localCache.put(key, new CacheEntry(copy, System.nanoTime() + properties.getLocalCacheTtl().toNanos()));
+        }
+    }
+
+    /**
+     * 使本地缓存失效
+     *
+     * @param key Redis键
+     */
+    public void invalidateLocal(final String key) {
+        localCache.remove(key);
+    }
+
+    /**
+     * 获取上一个统计窗口的报告
+     *
+     * @return Report
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    public long getHotThreshold() {
+        return properties.getHotThreshold();
+    }
+
+    public long getSampledReads() {
+        return sampledReads.sum();
+    }
+
+    public long getSampledWrites() {
+        return sampledWrites.sum();
+    }
+
+    public long getLocalCacheHits() {
+        return localCacheHits.sum();
+    }
+
+    public int getLocalCacheSize() {
+        return localCache.size();
+    }
+
+    /**
+     * 结束当前窗口：生成报告、更新热点key集合、清零统计、清理过期本地缓存
+     */
+    void report() {
+        try {
+            Map<String, Long> topReads = toMap(reads.top());
+            Map<String, Long> topWrites = toMap(writes.top());
+            Set<String> hot = new HashSet<>();
+            for (Map.Entry<String, Long> entry : topReads.entrySet()) {
+                if (entry.getValue() >= properties.getHotThreshold()) {
+                    hot.add(entry.getKey());
+                }
+            }
+            hotKeys = hot;
+            lastReport = new Report(System.currentTimeMillis(), topReads, topWrites);
+            reads.reset();
+            writes.reset();
+
+            long now = System.nanoTime();
+            localCache.entrySet().removeIf(entry -> entry.getValue().expireAt < now || !hot.contains(entry.getKey()));
+
+            if (!hot.isEmpty()) {
+                log.warn("redis hot keys detected, reads top: {}, writes top: {}", topReads, topWrites);
+            } else if (log.isDebugEnabled()) {
+                log.debug("redis hot key report, reads top: {}, writes top: {}", topReads, topWrites);
+            }
+        } catch (RuntimeException e) {
+            log.error("redis hot key report failed", e);
+        }
+    }
+
+    private boolean sampled() {
+        int interval = properties.getSampleInterval();
+        return interval == 1 || ThreadLocalRandom.current().nextInt(interval) == 0;
+    }
+
+    /**
+     * 深复制Jackson反序列化得到的值：Map/List/Set逐层复制，不可变的字符串、数字、布尔原样返回，其他类型返回null
+     */
+    static Object copyOf(final Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Character
+                || value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Float
+                || value instanceof Short || value instanceof Byte
+                || value instanceof java.math.BigInteger || value instanceof java.math.BigDecimal) {
+            return value;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object item = copyOf(entry.getValue());
+                if (item == null && entry.getValue() != null) {
+                    return null;
+                }
+                copy.put(entry.getKey(), item);
+            }
+            return copy;
+        }
+        if (value instanceof Collection) {
+            Collection<Object> copy = value instanceof Set ? new LinkedHashSet<>() : new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                Object item = copyOf(element);
+                if (item == null && element != null) {
+                    return null;
+                }
+                copy.add(item);
+            }
+            return copy;
+        }
+        return null;
+    }
+
+    private static Map<String, Long> toMap(final List<Map.Entry<String, Long>> entries) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            map.put(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    private static final class CacheEntry {
+        private final Object value;
+        private final long expireAt;
+
+        private CacheEntry(final Object value, final long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 热点key报告，次数为按采样间隔放大后的估算值
+     */
+    public static final class Report {
+
+        private final long timestamp;
+        private final Map<String, Long> reads;
+        private final Map<String, Long> writes;
+
+        Report(final long timestamp, final Map<String, Long> reads, final Map<String, Long> writes) {
+            this.timestamp = timestamp;
+            this.reads = Collections.unmodifiableMap(reads);
+            this.writes = Collections.unmodifiableMap(writes);
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Map<String, Long> getReads() {
+            return reads;
+        }
+
+        public Map<String, Long> getWrites() {
+            return writes;
+        }
+    }
+}
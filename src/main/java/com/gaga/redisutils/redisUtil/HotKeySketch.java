@@ -0,0 +1,190 @@
+package com.gaga.redisutils.redisUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 热点key统计：count-min sketch估算访问次数 + top-K候选集
+ * <p>
+ * sketch内存固定为depth*width个long，候选集最多保留2*topK个key，
+ * 计数通过AtomicLongArray累加，候选集使用ConcurrentHashMap，记录路径无锁。
+ * 每行对key的UTF-8字节用不同种子做murmur3哈希，行与行之间的碰撞相互独立
+ *
+ * @Author fuGaga
+ * @Date 2021/5/18 14:05
+ * @Version 1.0
+ */
+public class HotKeySketch {
+
+    /**每行哈希函数的种子 */
+    private static final int[] SEEDS = {
+            0x9E3779B9, 0x7F4A7C15, 0xC2B2AE3D, 0x27D4EB4F, 0x165667B1, 0xD6E8FEB8, 0xFF51AFD7, 0xC4CEB9FE
+    };
+
+    private final int depth;
+    private final int mask;
+    private final int topK;
+    private final AtomicLongArray counters;
+
+    /**top-K候选key及其估算次数 */
+    private final ConcurrentHashMap<String, Long> candidates = new ConcurrentHashMap<>();
+    /**候选集裁剪标记，同一时刻只有一个线程裁剪 */
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    /**进入候选集的最小估算次数 */
+    private volatile long threshold;
+
+    /**
+     * @param width sketch每行的计数器个数，向上取整为2的幂
+     * @param depth sketch行数(哈希函数个数)，最大8
+     * @param topK  保留的热点key个数
+     */
+    public HotKeySketch(final int width, final int depth, final int topK) {
+        if (width <= 0 || depth <= 0 || depth > SEEDS.length || topK <= 0) {
+            throw new IllegalArgumentException("width and topK must be positive, depth must be in [1, " + SEEDS.length + "]");
+        }
+        int size = Integer.highestOneBit(width);
+        if (size < width) {
+            size <<= 1;
+        }
+        this.depth = depth;
+        this.mask = size - 1;
+        this.topK = topK;
+        this.counters = new AtomicLongArray(size * depth);
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key Redis键
+     * @param weight 本次记录代表的访问次数(采样时为采样间隔)
+     */
+    public void add(final String key, final long weight) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + index(bytes, row);
+            estimate = Math.min(estimate, counters.addAndGet(index, weight));
+        }
+        if (estimate >= threshold || candidates.containsKey(key)) {
+            candidates.put(key, estimate);
+            if (candidates.size() > topK * 2) {
+                trim();
+            }
+        }
+    }
+
+    /**
+     * 估算key的访问次数
+     *
+     * @param key Redis键
+     * @return long
+     */
+    public long estimate(final String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(row * (mask + 1) + index(bytes, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * 获取访问次数最多的key，按次数降序
+     *
+     * @return java.util.List<java.util.Map.Entry<java.lang.String,java.lang.Long>>
+     */
+    public List<Map.Entry<String, Long>> top() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(candidates.size());
+        for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries.size() > topK ? new ArrayList<>(entries.subList(0, topK)) : entries;
+    }
+
+    /**
+     * 清空统计，开始新的统计窗口
+     */
+    public void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        candidates.clear();
+        threshold = 0;
+    }
+
+    /**
+     * 候选集超过2*topK时，只保留前topK个，并把门槛提高到第topK个的次数
+     */
+    private void trim() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Map.Entry<String, Long>> top = top();
+            if (top.size() < topK) {
+                return;
+            }
+            Set<String> keep = new HashSet<>();
+            for (Map.Entry<String, Long> entry : top) {
+                keep.add(entry.getKey());
+            }
+            candidates.keySet().retainAll(keep);
+            threshold = top.get(top.size() - 1).getValue();
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private int index(final byte[] key, final int row) {
+        return murmur3(key, SEEDS[row]) & mask;
+    }
+
+    /**
+     * murmur3 x86 32位哈希
+     */
+    static int murmur3(final byte[] data, final int seed) {
+        int h = seed;
+        int blocks = data.length >>> 2;
+        for (int i = 0; i < blocks; i++) {
+            int offset = i << 2;
+            int k = (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8
+                    | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+        }
+        int tail = blocks << 2;
+        int k = 0;
+        switch (data.length & 3) {
+            case 3:
+                k ^= (data[tail + 2] & 0xff) << 16;
+                // fall through
+            case 2:
+                k ^= (data[tail + 1] & 0xff) << 8;
+                // fall through
+            case 1:
+                k ^= data[tail] & 0xff;
+                h ^= mixK(k);
+                break;
+            default:
+                break;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xCC9E2D51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1B873593;
+    }
+}
@@ -0,0 +1,66 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsProperties;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.protocol.RedisCommand;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+
+/**
+ * 按操作分类设置Lettuce的命令超时
+ * <p>
+ * 每条命令按{@link RedisResilience#operationOf(String)}归类后使用对应的超时，由驱动在超时后使命令失败，
+ * 调用线程不需要切换线程等待，超时的命令不会中断I/O，连接可继续使用；阻塞命令不设置超时。
+ * 会替换Spring Boot生成的ClientOptions，这里按spring.redis.lettuce.cluster.refresh.*重新设置集群拓扑刷新
+ *
+ * @Author fuGaga
+ * @Date 2021/6/22 15:30
+ * @Version 1.0
+ */
+public class LettuceTimeoutCustomizer implements LettuceClientConfigurationBuilderCustomizer {
+
+    private final RedisUtilsProperties.Resilience properties;
+    private final RedisProperties redisProperties;
+
+    public LettuceTimeoutCustomizer(final RedisUtilsProperties.Resilience properties, final RedisProperties redisProperties) {
+        this.properties = properties;
+        this.redisProperties = redisProperties;
+    }
+
+    @Override
+    public void customize(final LettuceClientConfiguration.LettuceClientConfigurationBuilder builder) {
+        builder.clientOptions(initializeClientOptionsBuilder().timeoutOptions(timeoutOptions()).build());
+    }
+
+    /**
+     * 按命令所属操作分类返回超时(ms)，0表示不超时
+     */
+    TimeoutOptions timeoutOptions() {
+        return TimeoutOptions.builder().timeoutSource(new TimeoutOptions.TimeoutSource() {
+            @Override
+            public long getTimeout(final RedisCommand<?, ?, ?> command) {
+                String operation = RedisResilience.operationOf(command.getType().name());
+                return operation == null ? 0 : properties.timeoutOf(operation).toMillis();
+            }
+        }).build();
+    }
+
+    private ClientOptions.Builder initializeClientOptionsBuilder() {
+        if (redisProperties.getCluster() == null) {
+            return ClientOptions.builder();
+        }
+        RedisProperties.Lettuce.Cluster.Refresh refresh = redisProperties.getLettuce().getCluster().getRefresh();
+        ClusterTopologyRefreshOptions.Builder refreshBuilder = ClusterTopologyRefreshOptions.builder();
+        if (refresh.getPeriod() != null) {
+            refreshBuilder.enablePeriodicRefresh(refresh.getPeriod());
+        }
+        if (refresh.isAdaptive()) {
+            refreshBuilder.enableAllAdaptiveRefreshTriggers();
+        }
+        return ClusterClientOptions.builder().topologyRefreshOptions(refreshBuilder.build());
+    }
+}
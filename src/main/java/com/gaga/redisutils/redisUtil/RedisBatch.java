@@ -0,0 +1,457 @@
+package com.gaga.redisutils.redisUtil;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * redis批量操作构建器
+ * <p>
+ * 所有入队的操作(value、hash、set、zset、list、expire、delete)在execute时通过一次pipeline发送，
+ * 每个操作返回一个{@link Response}句柄，execute之后通过get()获取结果，结果在首次访问时才反序列化。
+ * atomic=true时整批命令包裹在MULTI/EXEC中原子执行。写操作涉及的key在execute之后通过HotKeyDetector使本地缓存失效。
+ * <pre>
+ * RedisBatch batch = redisTemplateService.batch();
+ * RedisBatch.Response&lt;Map&lt;Object, Object&gt;&gt; user = batch.hashGetAll("user:1");
+ * RedisBatch.Response&lt;List&lt;Object&gt;&gt; feed = batch.listGet("feed:1", 0, 9);
+ * batch.execute();
+ * user.get();
+ * </pre>
+ * 非线程安全，一个实例只能execute一次
+ *
+ * @Author fuGaga
+ * @Date 2021/5/10 10:12
+ * @Version 1.0
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class RedisBatch {
+
+    private final RedisTemplate redisTemplate;
+
+    /**热点key探测，未启用时为null */
+    private final HotKeyDetector hotKeyDetector;
+
+    /**是否使用MULTI/EXEC */
+    private final boolean atomic;
+
+    private final RedisSerializer keySerializer;
+    private final RedisSerializer valueSerializer;
+    private final RedisSerializer hashKeySerializer;
+    private final RedisSerializer hashValueSerializer;
+
+    /**入队的命令 */
+    private final List<Consumer<RedisConnection>> commands = new ArrayList<>();
+    /**命令对应的结果句柄 */
+    private final List<Response<?>> responses = new ArrayList<>();
+    /**写操作涉及的key */
+    private final Set<String> writtenKeys = new LinkedHashSet<>();
+
+    private boolean executed;
+
+    RedisBatch(final RedisTemplate redisTemplate, final HotKeyDetector hotKeyDetector, final boolean atomic) {
+        this.redisTemplate = redisTemplate;
+        this.hotKeyDetector = hotKeyDetector;
+        this.atomic = atomic;
+        this.keySerializer = redisTemplate.getKeySerializer();
+        this.valueSerializer = redisTemplate.getValueSerializer();
+        this.hashKeySerializer = redisTemplate.getHashKeySerializer();
+        this.hashValueSerializer = redisTemplate.getHashValueSerializer();
+    }
+
+    // 普通对象操作
+
+    /**
+     * 存入普通对象(key永不过期)
+     *
+     * @param key   Redis键
+     * @param value 值
+     * @return true=设置成功
+     */
+    public Response<Boolean> setValue(final String key, final Object value) {
+        written(key);
+        final byte[] rawKey = rawKey(key);
+        final byte[] rawValue = valueSerializer.serialize(value);
+        return queue(connection -> connection.set(rawKey, rawValue), RedisBatch::toBoolean);
+    }
+
+    /**
+     * 存入普通对象
+     *
+     * @param key     Redis键
+     * @param value   值
+     * @param timeout 有效期，单位秒
+     * @return true=设置成功
+     */
+    public Response<Boolean> setValueTimeout(final String key, final Object value, final long timeout) {
+        written(key);
+        final byte[] rawKey = rawKey(key);
+        final byte[] rawValue = valueSerializer.serialize(value);
+        return queue(connection -> connection.set(rawKey, rawValue, Expiration.seconds(timeout),
+                RedisStringCommands.SetOption.upsert()), RedisBatch::toBoolean);
+    }
+
+    /**
+     * 获取普通对象
+     *
+     * @param key Redis键
+     * @return 对象
+     */
+    public Response<Object> getValue(final String key) {
+        final byte[] rawKey = rawKey(key);
+        return queue(connection -> connection.get(rawKey), raw -> valueSerializer.deserialize((byte[]) raw));
+    }
+
+    // Hash操作
+
+    /**
+     * 往Hash中存入数据
+     *
+     * @param key   Redis键
+     * @param hKey  Hash键
+     * @param value 值
+     * @return true=新增字段；false=覆盖已有字段
+     */
+    public Response<Boolean> hashPut(final String key, final String hKey, final Object value) {
+        written(key);
+        final byte[] rawKey = rawKey(key);
+        final byte[] rawHashKey = hashKeySerializer.serialize(hKey);
+        final byte[] rawValue = hashValueSerializer.serialize(value);
+        return queue(connection -> connection.hSet(rawKey, rawHashKey, rawValue), RedisBatch::toBoolean);
+    }
+
+    /**
+     * 获取Hash中的数据
+     *
+     * @param key  Redis键
+     * @param hKey Hash键
+     * @return Hash中的对象
+     */
+    public Response<Object> hashGet(final String key, final String hKey) {
+        final byte[] rawKey = rawKey(key);
+        final byte[] rawHashKey = hashKeySerializer.serialize(hKey);
+        return queue(connection -> connection.hGet(rawKey, rawHashKey),
+                raw -> hashValueSerializer.deserialize((byte[]) raw));
+    }
+
+    /**
+     * 获取Hash中的全部数据
+     *
+     * @param key Redis键
+     * @return Hash对象
+     */
+    public Response<Map<Object, Object>> hashGetAll(final String key) {
+        final byte[] rawKey = rawKey(key);
+        return queue(connection -> connection.hGetAll(rawKey), raw -> {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<byte[], byte[]> entry : ((Map<byte[], byte[]>) raw).entrySet()) {
+                map.put(hashKeySerializer.deserialize(entry.getKey()), hashValueSerializer.deserialize(entry.getValue()));
+            }
+            return map;
+        });
+    }
+
+    // Set操作
+
+    /**
+     * 往Set中存入数据
+     *
+     * @param key    Redis键
+     * @param values 值
+     * @return 存入的个数
+     */
+    public Response<Long> setSet(final String key, final Object... values) {
+        written(key);
+        final byte[] rawKey = rawKey(key);
+        final byte[][] rawValues = rawValues(values);
+        return queue(connection -> connection.sAdd(rawKey, rawValues), RedisBatch::toLong);
+    }
+
+    /**
+     * 获取set中的所有对象
+     *
+     * @param key Redis键
+     * @return set集合
+     */
+    public Response<Set<Object>> getSetAll(final String key) {
+        final byte[] rawKey = rawKey(key);
+        return queue(connection -> connection.sMembers(rawKey), raw -> deserializeValues((Collection<byte[]>) raw,
+                new LinkedHashSet<>()));
+    }
+
+    // ZSet操作
+
+    /**
+     * 往ZSet中存入数据
+     *
+     * @param key   Redis键
+     * @param value 值
+     * @param score 权重
+     * @return true存入成功，false失败
+     */
+    public Response<Boolean> zsetSet(final String key, final Object value, final double score) {
+        written(key);
+        final byte[] rawKey = rawKey(key);
+        final byte[] rawValue = valueSerializer.serialize(value);
+        return queue(connection -> connection.zAdd(rawKey, score, rawValue), RedisBatch::toBoolean);
+    }
+
+    /**
+     * 获取ZSet中的数据
+     *
+     * @param key   Redis键
+     * @param start 起始位置
+     * @param end   结束位置
+     * @return 有序集合
+     */
+    public Response<Set<Object>> zsetGet(final String key, final long start, final long end) {
+        final byte[] rawKey = rawKey(key);
+        return queue(connection -> connection.zRange(rawKey, start, end), raw -> deserializeValues((Collection<byte[]>) raw,
+                new LinkedHashSet<>()));
+    }
+
+    // List操作
+
+    /**
+     * 往List中存入数据
+     *
+     * @param key   Redis键
+     * @param value 数据
+     * @return push后List的长度
+     */
+    public Response<Long> listPush(final String key, final Object value) {
+        written(key);
+        final byte[] rawKey = rawKey(key);
+        final byte[] rawValue = valueSerializer.serialize(value);
+        return queue(connection -> connection.rPush(rawKey, rawValue), RedisBatch::toLong);
+    }
+
+    /**
+     * 从List中获取begin到end之间的元素
+     *
+     * @param key   Redis键
+     * @param start 开始位置
+     * @param end   结束位置（start=0，end=-1表示获取全部元素）
+     * @return List对象
+     */
+    public Response<List<Object>> listGet(final String key, final long start, final long end) {
+        final byte[] rawKey = rawKey(key);
+        return queue(connection -> connection.lRange(rawKey, start, end), raw -> deserializeValues((Collection<byte[]>) raw,
+                new ArrayList<>()));
+    }
+
+    // key操作
+
+    /**
+     * 设置有效时间
+     *
+     * @param key     Redis键
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return true=设置成功；false=设置失败
+     */
+    public Response<Boolean> expire(final String key, final long timeout, final TimeUnit unit) {
+        written(key);
+        final byte[] rawKey = rawKey(key);
+        final long millis = unit.toMillis(timeout);
+        return queue(connection -> connection.pExpire(rawKey, millis), RedisBatch::toBoolean);
+    }
+
+    /**
+     * 删除key
+     *
+     * @param keys 键
+     * @return 成功删除的个数
+     */
+    public Response<Long> delKey(final String... keys) {
+        final byte[][] rawKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            written(keys[i]);
+            rawKeys[i] = rawKey(keys[i]);
+        }
+        return queue(connection -> connection.del(rawKeys), RedisBatch::toLong);
+    }
+
+    /**
+     * 已入队的操作个数
+     *
+     * @return int
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * 通过一次pipeline执行所有入队的操作，执行后各Response可用
+     *
+     * @Author fuGaga
+     * @Date 2021/5/10 10:40
+     * @return void
+     **/
+    public void execute() {
+        if (executed) {
+            throw new IllegalStateException("RedisBatch has already been executed");
+        }
+        executed = true;
+        if (commands.isEmpty()) {
+            return;
+        }
+        // 直接在连接上开关pipeline，不经过executePipelined的结果反序列化，结果保留原始byte[]，由Response在访问时反序列化
+        List<Object> results = (List<Object>) redisTemplate.execute(new RedisCallback<List<Object>>() {
+            @Override
+            public List<Object> doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.openPipeline();
+                boolean closed = false;
+                try {
+                    if (atomic) {
+                        connection.multi();
+                    }
+                    for (Consumer<RedisConnection> command : commands) {
+                        command.accept(connection);
+                    }
+                    if (atomic) {
+                        connection.exec();
+                    }
+                    closed = true;
+                    return connection.closePipeline();
+                } finally {
+                    if (!closed) {
+                        connection.closePipeline();
+                    }
+                }
+            }
+        });
+        if (hotKeyDetector != null) {
+            for (String key : writtenKeys) {
+                hotKeyDetector.recordWrite(key);
+            }
+        }
+        results = alignResults(results);
+        for (int i = 0; i < responses.size(); i++) {
+            responses.get(i).complete(i < results.size() ? results.get(i) : null);
+        }
+    }
+
+    /**
+     * 事务模式下pipeline的结果为[各命令结果..., EXEC结果集]（Lettuce），或只有EXEC结果集，这里统一为每个命令一个结果。
+     * 命令失败时closePipeline直接抛出异常，不会出现在结果中，见RedisBatchTests
+     */
+    private List<Object> alignResults(final List<Object> results) {
+        if (results == null) {
+            return Collections.emptyList();
+        }
+        if (atomic && !results.isEmpty()) {
+            Object last = results.get(results.size() - 1);
+            if (last instanceof List && ((List) last).size() == commands.size()
+                    && (results.size() == 1 || results.size() == commands.size() + 1)) {
+                return (List<Object>) last;
+            }
+        }
+        return results;
+    }
+
+    private <T> Response<T> queue(final Consumer<RedisConnection> command, final Function<Object, T> decoder) {
+        if (executed) {
+            throw new IllegalStateException("RedisBatch has already been executed");
+        }
+        Response<T> response = new Response<>(decoder);
+        commands.add(command);
+        responses.add(response);
+        return response;
+    }
+
+    private void written(final String key) {
+        if (executed) {
+            throw new IllegalStateException("RedisBatch has already been executed");
+        }
+        writtenKeys.add(key);
+    }
+
+    private byte[] rawKey(final String key) {
+        return keySerializer.serialize(key);
+    }
+
+    private byte[][] rawValues(final Object... values) {
+        byte[][] rawValues = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            rawValues[i] = valueSerializer.serialize(values[i]);
+        }
+        return rawValues;
+    }
+
+    private <C extends Collection<Object>> C deserializeValues(final Collection<byte[]> raw, final C target) {
+        for (byte[] value : raw) {
+            target.add(valueSerializer.deserialize(value));
+        }
+        return target;
+    }
+
+    private static Boolean toBoolean(final Object raw) {
+        if (raw instanceof Number) {
+            return ((Number) raw).longValue() > 0;
+        }
+        return (Boolean) raw;
+    }
+
+    private static Long toLong(final Object raw) {
+        return raw == null ? 0L : ((Number) raw).longValue();
+    }
+
+    /**
+     * 批量操作的结果句柄，execute之后可用，首次get()时反序列化
+     *
+     * @param <T> 结果类型
+     */
+    public static final class Response<T> {
+
+        private final Function<Object, T> decoder;
+
+        private Object raw;
+        private T value;
+        private boolean completed;
+        private boolean decoded;
+
+        private Response(final Function<Object, T> decoder) {
+            this.decoder = decoder;
+        }
+
+        private void complete(final Object raw) {
+            this.raw = raw;
+            this.completed = true;
+        }
+
+        /**
+         * 是否已执行完成
+         *
+         * @return boolean
+         */
+        public boolean isDone() {
+            return completed;
+        }
+
+        /**
+         * 获取结果
+         *
+         * @return T 命令结果，key不存在时为null
+         */
+        public T get() {
+            if (!completed) {
+                throw new IllegalStateException("RedisBatch has not been executed yet");
+            }
+            if (!decoded) {
+                value = raw == null ? null : decoder.apply(raw);
+                raw = null;
+                decoded = true;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 基于ZSet的延迟队列
+ * <p>
+ * 任务按到期时间戳作为score存入ZSet，到期后由lua脚本原子地移到以领取时间为score的claimed ZSet并返回给当前节点，
+ * 多节点同时轮询不会重复领取。轮询线程按下一个任务的到期时间自适应休眠，本节点投递的近期任务由时间轮准时唤醒；
+ * 领取的任务交给分发线程池处理，处理完后从claimed ZSet删除，失败则延迟重新投递；
+ * 领取后超过claimTimeout仍未确认的任务(如节点宕机、失败后重新投递也失败)由轮询线程移回队列重新投递，即至少投递一次。
+ * 任务按值序列化后去重，相同内容的任务在队列中只保留一个
+ *
+ * @Author fuGaga
+ * @Date 2021/6/2 16:00
+ * @Version 1.0
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class RedisDelayQueue implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisDelayQueue.class);
+
+    /**领取最多ARGV[2]个score<=ARGV[1]的任务，从ZSet移到以领取时间为score的claimed ZSet，返回[任务, score, ...] */
+    private static final String CLAIM_SCRIPT =
+            "local jobs = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, ARGV[2]) "
+                    + "for i = 1, #jobs, 2 do "
+                    + "redis.call('ZREM', KEYS[1], jobs[i]) "
+                    + "redis.call('ZADD', KEYS[2], ARGV[1], jobs[i]) "
+                    + "end "
+                    + "return jobs";
+
+    /**把最多ARGV[2]个领取时间<=ARGV[1]的任务移回队列，以ARGV[3]为到期时间，已重新投递的保留原到期时间，返回移回个数 */
+    private static final String REAP_SCRIPT =
+            "local jobs = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) "
+                    + "for i = 1, #jobs do "
+                    + "redis.call('ZREM', KEYS[2], jobs[i]) "
+                    + "redis.call('ZADD', KEYS[1], 'NX', ARGV[3], jobs[i]) "
+                    + "end "
+                    + "return #jobs";
+
+    private static final DefaultRedisScript<List> claimScript = new DefaultRedisScript<>(CLAIM_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> reapScript = new DefaultRedisScript<>(REAP_SCRIPT, Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private HotKeyDetector hotKeyDetector;
+
+    private final RedisUtilsProperties.DelayQueue properties;
+
+    private final TimingWheel timingWheel;
+    private final ThreadPoolExecutor dispatcher;
+    /**限制已领取未处理完的任务数，避免领取超过分发能力 */
+    private final Semaphore dispatchPermits;
+
+    /**队列名 -> 轮询器 */
+    private final ConcurrentHashMap<String, Poller> pollers = new ConcurrentHashMap<>();
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    /**按队列记录分发延迟和失败，如micrometer指标 */
+    private volatile DispatchListener dispatchListener;
+
+    private volatile boolean running = true;
+
+    public RedisDelayQueue(final RedisUtilsProperties.DelayQueue properties) {
+        this.properties = properties;
+        this.timingWheel = new TimingWheel(properties.getTick().toMillis(), properties.getWheelSize(), "redis-delay-queue-wheel");
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.dispatcher = new ThreadPoolExecutor(properties.getDispatchThreads(), properties.getDispatchThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "redis-delay-queue-dispatch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatchPermits = new Semaphore(properties.getDispatchThreads() * 2);
+    }
+
+    /**
+     * 投递延迟任务
+     *
+     * @param queue 队列名
+     * @param job   任务
+     * @param delay 延迟
+     * @param unit  时间单位
+     * @return true=新投递；false=任务已存在，更新了到期时间
+     * @Author fuGaga
+     * @Date 2021/6/2 16:10
+     **/
+    public boolean schedule(final String queue, final Object job, final long delay, final TimeUnit unit) {
+        return scheduleAt(queue, job, System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    /**
+     * 投递在指定时间到期的任务
+     *
+     * @param queue     队列名
+     * @param job       任务
+     * @param dueMillis 到期时间戳(ms)
+     * @return true=新投递；false=任务已存在，更新了到期时间
+     * @Author fuGaga
+     * @Date 2021/6/2 16:10
+     **/
+    public boolean scheduleAt(final String queue, final Object job, final long dueMillis) {
+        Boolean added = redisTemplate.opsForZSet().add(delayKey(queue), job, dueMillis);
+        recordWrite(queue);
+        Poller poller = pollers.get(queue);
+        if (poller != null && dueMillis - System.currentTimeMillis() <= timingWheel.getHorizonMillis()) {
+            timingWheel.schedule(dueMillis, poller::wake);
+        }
+        return added != null && added;
+    }
+
+    /**
+     * 取消尚未到期的任务
+     *
+     * @param queue 队列名
+     * @param job   任务
+     * @return true=取消成功；false=任务不存在或已被领取
+     * @Author fuGaga
+     * @Date 2021/6/2 16:12
+     **/
+    public boolean cancel(final String queue, final Object job) {
+        Long count = redisTemplate.opsForZSet().remove(delayKey(queue), job);
+        recordWrite(queue);
+        return count != null && count > 0;
+    }
+
+    /**
+     * 队列中未到期(含已到期未领取)的任务数
+     *
+     * @param queue 队列名
+     * @return long
+     */
+    public long size(final String queue) {
+        Long size = redisTemplate.opsForZSet().zCard(delayKey(queue));
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * 原子地领取最多limit个到期任务，领取的任务移到claimed ZSet，处理完后需在claimTimeout内调用{@link #ack(String, ClaimedJob)}
+     *
+     * @param queue 队列名
+     * @param limit 最多领取个数
+     * @return 领取到的任务
+     * @Author fuGaga
+     * @Date 2021/6/2 16:20
+     **/
+    public List<ClaimedJob> claim(final String queue, final int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<byte[]> raw = (List<byte[]>) redisTemplate.execute(claimScript, new StringRedisSerializer(),
+                RedisSerializer.byteArray(), Arrays.asList(delayKey(queue), claimedKey(queue)),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(limit));
+        if (raw == null || raw.isEmpty()) {
+            return Collections.emptyList();
+        }
+        recordWrite(queue);
+        RedisSerializer valueSerializer = redisTemplate.getValueSerializer();
+        List<ClaimedJob> jobs = new ArrayList<>(raw.size() / 2);
+        for (int i = 0; i + 1 < raw.size(); i += 2) {
+            byte[] member = raw.get(i);
+            long dueMillis = (long) Double.parseDouble(new String(raw.get(i + 1), StandardCharsets.UTF_8));
+            jobs.add(new ClaimedJob(valueSerializer.deserialize(member), member, dueMillis));
+        }
+        return jobs;
+    }
+
+    /**
+     * 确认任务处理完成，从claimed ZSet删除
+     *
+     * @param queue 队列名
+     * @param job   领取到的任务
+     */
+    public void ack(final String queue, final ClaimedJob job) {
+        final byte[] claimedKey = rawKey(claimedKey(queue));
+        redisTemplate.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.zRem(claimedKey, job.rawJob);
+            }
+        });
+    }
+
+    /**
+     * 把领取后超过claimTimeout仍未确认的任务移回队列立即重新投递，订阅的队列由轮询线程定期调用
+     *
+     * @param queue 队列名
+     * @return 移回的任务数
+     * @Author fuGaga
+     * @Date 2021/6/2 16:25
+     **/
+    public long reap(final String queue) {
+        long now = System.currentTimeMillis();
+        Long reaped = (Long) redisTemplate.execute(reapScript, new StringRedisSerializer(), null,
+                Arrays.asList(delayKey(queue), claimedKey(queue)),
+                String.valueOf(now - properties.getClaimTimeout().toMillis()), String.valueOf(properties.getBatchSize()),
+                String.valueOf(now));
+        if (reaped != null && reaped > 0) {
+            recordWrite(queue);
+            log.warn("delay queue {} redelivered {} jobs not acked within {}", queue, reaped, properties.getClaimTimeout());
+        }
+        return reaped == null ? 0 : reaped;
+    }
+
+    /**
+     * 设置分发监听，用于按队列记录分发延迟和失败
+     *
+     * @param dispatchListener 监听，null=不记录
+     */
+    public void setDispatchListener(final DispatchListener dispatchListener) {
+        this.dispatchListener = dispatchListener;
+    }
+
+    /**
+     * 订阅队列，到期任务由分发线程池调用handler处理，handler抛出异常时任务延迟重新投递
+     *
+     * @param queue   队列名
+     * @param handler 任务处理
+     * @Author fuGaga
+     * @Date 2021/6/2 16:30
+     **/
+    public void subscribe(final String queue, final Consumer<Object> handler) {
+        Poller poller = new Poller(queue, handler);
+        if (pollers.putIfAbsent(queue, poller) != null) {
+            throw new IllegalStateException("delay queue " + queue + " has already been subscribed");
+        }
+        poller.start();
+    }
+
+    /**
+     * 取消订阅，已领取的任务仍会处理完
+     *
+     * @param queue 队列名
+     */
+    public void unsubscribe(final String queue) {
+        Poller poller = pollers.remove(queue);
+        if (poller != null) {
+            poller.stop();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        for (Poller poller : pollers.values()) {
+            poller.stop();
+        }
+        pollers.clear();
+        timingWheel.stop();
+        dispatcher.shutdown();
+    }
+
+    /**
+     * 下一个任务的到期时间戳，队列为空返回null
+     */
+    private Long nextDueMillis(final String queue) {
+        Set<ZSetOperations.TypedTuple<Object>> first = redisTemplate.opsForZSet().rangeWithScores(delayKey(queue), 0, 0);
+        if (first == null || first.isEmpty()) {
+            return null;
+        }
+        Double score = first.iterator().next().getScore();
+        return score == null ? null : score.longValue();
+    }
+
+    private void dispatch(final String queue, final ClaimedJob job, final Consumer<Object> handler) {
+        dispatcher.execute(() -> {
+            long lag = Math.max(System.currentTimeMillis() - job.dueMillis, 0);
+            dispatched.increment();
+            DispatchListener listener = dispatchListener;
+            if (listener != null) {
+                listener.onDispatched(queue, lag);
+            }
+            // 处理成功或已重新投递才确认，否则保留在claimed ZSet由reap重新投递
+            boolean done = false;
+            try {
+                handler.accept(job.job);
+                done = true;
+            } catch (Throwable e) {
+                failed.increment();
+                if (listener != null) {
+                    listener.onFailed(queue);
+                }
+                log.error("delay queue {} job failed, retry in {}", queue, properties.getRetryDelay(), e);
+                try {
+                    scheduleAt(queue, job.job, System.currentTimeMillis() + properties.getRetryDelay().toMillis());
+                    done = true;
+                } catch (RuntimeException retryError) {
+                    log.error("delay queue {} job retry failed, redeliver after {}", queue,
+                            properties.getClaimTimeout(), retryError);
+                }
+            } finally {
+                try {
+                    if (done) {
+                        ack(queue, job);
+                    }
+                } finally {
+                    dispatchPermits.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * 投递、取消、领取都会修改延迟ZSet，计入热点key的写统计并使本地缓存失效
+     */
+    private void recordWrite(final String queue) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.recordWrite(delayKey(queue));
+        }
+    }
+
+    private String delayKey(final String queue) {
+        return properties.getKeyPrefix() + queue;
+    }
+
+    private String claimedKey(final String queue) {
+        return properties.getKeyPrefix() + queue + ":claimed";
+    }
+
+    private byte[] rawKey(final String key) {
+        return redisTemplate.getKeySerializer().serialize(key);
+    }
+
+    /**
+     * 已分发的任务数
+     *
+     * @return long
+     */
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    /**
+     * 处理失败的任务数
+     *
+     * @return long
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * 分发线程池中等待执行的任务数
+     *
+     * @return int
+     */
+    public int getPendingCount() {
+        return dispatcher.getQueue().size();
+    }
+
+    /**
+     * 分发监听，在分发线程中调用，必须足够轻量
+     */
+    public interface DispatchListener {
+
+        /**
+         * 任务开始处理
+         *
+         * @param queue     队列名
+         * @param lagMillis 到期到开始处理的延迟(ms)
+         */
+        void onDispatched(String queue, long lagMillis);
+
+        /**
+         * 任务处理失败
+         *
+         * @param queue 队列名
+         */
+        void onFailed(String queue);
+    }
+
+    /**
+     * 领取到的任务
+     */
+    public static final class ClaimedJob {
+
+        private final Object job;
+        private final byte[] rawJob;
+        private final long dueMillis;
+
+        ClaimedJob(final Object job, final byte[] rawJob, final long dueMillis) {
+            this.job = job;
+            this.rawJob = rawJob;
+            this.dueMillis = dueMillis;
+        }
+
+        public Object getJob() {
+            return job;
+        }
+
+        public long getDueMillis() {
+            return dueMillis;
+        }
+    }
+
+    /**
+     * 单个队列的轮询线程
+     */
+    private final class Poller implements Runnable {
+
+        private final String queue;
+        private final Consumer<Object> handler;
+        private final Thread thread;
+        private volatile boolean active = true;
+
+        private Poller(final String queue, final Consumer<Object> handler) {
+            this.queue = queue;
+            this.handler = handler;
+            this.thread = new Thread(this, "redis-delay-queue-poller-" + queue);
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() {
+            active = false;
+            wake();
+        }
+
+        private void wake() {
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long maxPollMillis = properties.getMaxPollInterval().toMillis();
+            long reapIntervalMillis = Math.max(properties.getClaimTimeout().toMillis() / 2, 1);
+            long nextReapMillis = 0;
+            while (running && active) {
+                try {
+                    if (System.currentTimeMillis() >= nextReapMillis) {
+                        nextReapMillis = System.currentTimeMillis() + reapIntervalMillis;
+                        reap(queue);
+                    }
+                    // 按空闲分发能力领取，至少等到一个空位
+                    dispatchPermits.acquire();
+                    int limit = 1 + drainPermits(properties.getBatchSize() - 1);
+                    List<ClaimedJob> jobs;
+                    try {
+                        jobs = claim(queue, limit);
+                    } catch (RuntimeException e) {
+                        dispatchPermits.release(limit);
+                        throw e;
+                    }
+                    dispatchPermits.release(limit - jobs.size());
+                    for (ClaimedJob job : jobs) {
+                        dispatch(queue, job, handler);
+                    }
+                    if (jobs.size() == limit) {
+                        continue;
+                    }
+                    // 没有更多到期任务，休眠到下一个任务到期，最长maxPollInterval，期间可被时间轮唤醒
+                    Long next = nextDueMillis(queue);
+                    long sleepMillis = next == null ? maxPollMillis
+                            : Math.min(Math.max(next - System.currentTimeMillis(), 0), maxPollMillis);
+                    if (sleepMillis > 0) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(sleepMillis));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("delay queue {} poll failed", queue, e);
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(maxPollMillis));
+                }
+            }
+        }
+
+        private int drainPermits(final int max) {
+            int acquired = 0;
+            while (acquired < max && dispatchPermits.tryAcquire()) {
+                acquired++;
+            }
+            return acquired;
+        }
+    }
+}
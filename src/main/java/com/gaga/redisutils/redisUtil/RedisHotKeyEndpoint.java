@@ -0,0 +1,31 @@
+package com.gaga.redisutils.redisUtil;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * 热点key报告端点 /actuator/redishotkeys
+ * @Author fuGaga
+ * @Date 2021/5/18 16:02
+ * @Version 1.0
+ */
+@Endpoint(id = "redishotkeys")
+public class RedisHotKeyEndpoint {
+
+    private final HotKeyDetector hotKeyDetector;
+
+    public RedisHotKeyEndpoint(final HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    /**
+     * 上一个统计窗口的热点key报告
+     * @Author fuGaga
+     * @Date 2021/5/18 16:02
+     * @return com.gaga.redisutils.redisUtil.HotKeyDetector.Report
+     **/
+    @ReadOperation
+    public HotKeyDetector.Report hotKeys() {
+        return hotKeyDetector.getLastReport();
+    }
+}
@@ -0,0 +1,428 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 大对象分块存储
+ * <p>
+ * 值按固定大小切分到编号key(key:版本号:序号)，key本身是记录版本号、块数、总大小的hash清单。
+ * 写入时先写完新版本的全部分块(写入过程中带pendingTtl临时过期时间，中断时自动清理)，再把分块过期时间改为比清单多留
+ * 一段余量并确认分块都还在，最后由lua脚本原子切换清单，旧版本分块延迟过期，保证并发读取读到完整的一个版本；
+ * 读取时按窗口pipeline批量获取分块并顺序写出，两端内存都只占窗口大小，单条命令也不会长时间阻塞Redis
+ *
+ * @Author fuGaga
+ * @Date 2021/7/20 14:10
+ * @Version 1.0
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class RedisLargeObject {
+
+    /**每次pipeline读写的分块数 */
+    private static final int WINDOW = 8;
+    /**旧版本分块在切换后保留的秒数，供正在读取旧版本的请求读完；也是分块比清单多保留的秒数 */
+    private static final long OLD_VERSION_TTL_SECONDS = 60;
+
+    /**切换清单到新版本，返回旧的版本号和块数 */
+    private static final DefaultRedisScript<List> switchScript = new DefaultRedisScript<>(
+            "local old = redis.call('HMGET', KEYS[1], 'version', 'chunks') "
+                    + "redis.call('HMSET', KEYS[1], 'version', ARGV[1], 'chunks', ARGV[2], 'size', ARGV[3], 'chunkSize', ARGV[4]) "
+                    + "if ARGV[5] ~= '-1' then redis.call('EXPIRE', KEYS[1], ARGV[5]) else redis.call('PERSIST', KEYS[1]) end "
+                    + "return old", List.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private HotKeyDetector hotKeyDetector;
+
+    private final RedisUtilsProperties.LargeObject properties;
+
+    public RedisLargeObject(final RedisUtilsProperties.LargeObject properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 按配置的分块大小写入输入流，永不过期
+     *
+     * @param key Redis键
+     * @param in  输入流，读完后不关闭
+     * @return 写入的字节数
+     * @Author fuGaga
+     * @Date 2021/7/20 14:20
+     **/
+    public long write(final String key, final InputStream in) throws IOException {
+        return write(key, in, properties.getChunkSize(), -1);
+    }
+
+    /**
+     * 分块写入输入流
+     *
+     * @param key       Redis键
+     * @param in        输入流，读完后不关闭
+     * @param chunkSize 分块大小(字节)
+     * @param seconds   过期时间(秒)，设置永不过期传-1
+     * @return 写入的字节数
+     * @Author fuGaga
+     * @Date 2021/7/20 14:20
+     **/
+    public long write(final String key, final InputStream in, final int chunkSize, final long seconds) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        final String version = UUID.randomUUID().toString().replace("-", "");
+        long size = 0;
+        int chunks = 0;
+        List<byte[]> window = new ArrayList<>(WINDOW);
+        try {
+            byte[] chunk;
+            while ((chunk = readChunk(in, chunkSize)) != null) {
+                window.add(chunk);
+                size += chunk.length;
+                if (window.size() == WINDOW) {
+                    writeChunks(key, version, chunks, window);
+                    chunks += window.size();
+                    window.clear();
+                }
+            }
+            if (!window.isEmpty()) {
+                writeChunks(key, version, chunks, window);
+                chunks += window.size();
+                window.clear();
+            }
+            finishChunks(key, version, chunks, seconds);
+        } catch (IOException | RuntimeException e) {
+            deleteChunks(key, version, chunks + window.size(), 0);
+            throw e;
+        }
+        List<String> old = (List<String>) redisTemplate.execute(switchScript, new StringRedisSerializer(),
+                new StringRedisSerializer(), Collections.singletonList(key), version, String.valueOf(chunks),
+                String.valueOf(size), String.valueOf(chunkSize), String.valueOf(seconds));
+        recordWrite(key);
+        if (old != null && old.size() == 2 && old.get(0) != null && old.get(1) != null) {
+            deleteChunks(key, old.get(0), Integer.parseInt(old.get(1)), OLD_VERSION_TTL_SECONDS);
+        }
+        return size;
+    }
+
+    /**
+     * 分块读取到输出流
+     *
+     * @param key Redis键
+     * @param out 输出流，写完后不关闭
+     * @return true=读取成功；false=key不存在
+     * @Author fuGaga
+     * @Date 2021/7/20 14:40
+     **/
+    public boolean read(final String key, final OutputStream out) throws IOException {
+        Manifest manifest = getManifest(key);
+        if (manifest == null) {
+            return false;
+        }
+        return readRange(key, manifest, 0, manifest.getSize(), out);
+    }
+
+    /**
+     * 读取指定范围的字节到输出流，只获取范围内的分块
+     *
+     * @param key    Redis键
+     * @param offset 起始偏移
+     * @param length 读取长度，超出总大小时读到末尾
+     * @param out    输出流，写完后不关闭
+     * @return true=读取成功；false=key不存在
+     * @Author fuGaga
+     * @Date 2021/7/20 14:40
+     **/
+    public boolean readRange(final String key, final long offset, final long length, final OutputStream out) throws IOException {
+        Manifest manifest = getManifest(key);
+        if (manifest == null) {
+            return false;
+        }
+        return readRange(key, manifest, offset, length, out);
+    }
+
+    /**
+     * 存入大对象，按RedisTemplate的value序列化方式序列化后分块
+     *
+     * @param key   Redis键
+     * @param value 值
+     * @Author fuGaga
+     * @Date 2021/7/20 15:00
+     **/
+    public void setValue(final String key, final Object value) {
+        byte[] bytes = redisTemplate.getValueSerializer().serialize(value);
+        try {
+            write(key, new ByteArrayInputStream(bytes == null ? new byte[0] : bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 获取大对象
+     *
+     * @param key Redis键
+     * @return 对象，不存在返回null
+     * @Author fuGaga
+     * @Date 2021/7/20 15:00
+     **/
+    public Object getValue(final String key) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!read(key, out)) {
+                return null;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return redisTemplate.getValueSerializer().deserialize(out.toByteArray());
+    }
+
+    /**
+     * 删除大对象的清单和全部分块
+     *
+     * @param key Redis键
+     * @return true=删除成功；false=key不存在
+     */
+    public boolean delete(final String key) {
+        Manifest manifest = getManifest(key);
+        if (manifest == null) {
+            return false;
+        }
+        redisTemplate.delete(key);
+        recordWrite(key);
+        deleteChunks(key, manifest.getVersion(), manifest.getChunks(), 0);
+        return true;
+    }
+
+    /**
+     * 获取清单
+     *
+     * @param key Redis键
+     * @return 清单，不存在返回null
+     */
+    public Manifest getManifest(final String key) {
+        final byte[] rawKey = rawKey(key);
+        Map<byte[], byte[]> raw = (Map<byte[], byte[]>) redisTemplate.execute(new RedisCallback<Map<byte[], byte[]>>() {
+            @Override
+            public Map<byte[], byte[]> doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.hGetAll(rawKey);
+            }
+        });
+        if (raw == null || raw.isEmpty()) {
+            return null;
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (Map.Entry<byte[], byte[]> entry : raw.entrySet()) {
+            fields.put(new String(entry.getKey(), StandardCharsets.UTF_8), new String(entry.getValue(), StandardCharsets.UTF_8));
+        }
+        return new Manifest(fields.get("version"), Integer.parseInt(fields.get("chunks")),
+                Long.parseLong(fields.get("size")), Integer.parseInt(fields.get("chunkSize")));
+    }
+
+    private boolean readRange(final String key, final Manifest manifest, final long offset, final long length,
+                              final OutputStream out) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative");
+        }
+        long end = Math.min(offset + length, manifest.getSize());
+        if (offset >= end) {
+            return true;
+        }
+        final int chunkSize = manifest.getChunkSize();
+        int firstChunk = (int) (offset / chunkSize);
+        int lastChunk = (int) ((end - 1) / chunkSize);
+        for (int from = firstChunk; from <= lastChunk; from += WINDOW) {
+            final int to = Math.min(from + WINDOW - 1, lastChunk);
+            final long[][] ranges = new long[to - from + 1][];
+            for (int i = from; i <= to; i++) {
+                long chunkStart = (long) i * chunkSize;
+                long start = Math.max(offset, chunkStart) - chunkStart;
+                long stop = Math.min(end, chunkStart + chunkSize) - chunkStart - 1;
+                ranges[i - from] = new long[]{i, start, stop};
+            }
+            List<Object> chunks = redisTemplate.executePipelined(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    for (long[] range : ranges) {
+                        byte[] chunkKey = rawKey(chunkKey(key, manifest.getVersion(), (int) range[0]));
+                        if (range[1] == 0 && range[2] == chunkSize - 1) {
+                            connection.get(chunkKey);
+                        } else {
+                            connection.getRange(chunkKey, range[1], range[2]);
+                        }
+                    }
+                    return null;
+                }
+            }, null);
+            for (int i = 0; i < ranges.length; i++) {
+                byte[] chunk = (byte[]) chunks.get(i);
+                long expected = ranges[i][2] - ranges[i][1] + 1;
+                if (chunk == null || chunk.length < expected) {
+                    throw new IllegalStateException("large object " + key + " was changed or expired during read");
+                }
+                out.write(chunk, 0, (int) expected);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 写入分块，带临时过期时间
+     */
+    private void writeChunks(final String key, final String version, final int firstIndex, final List<byte[]> chunks) {
+        final long pendingSeconds = properties.getPendingTtl().getSeconds();
+        redisTemplate.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (int i = 0; i < chunks.size(); i++) {
+                    byte[] chunkKey = rawKey(chunkKey(key, version, firstIndex + i));
+                    connection.set(chunkKey, chunks.get(i));
+                    connection.expire(chunkKey, pendingSeconds);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 切换清单前把全部分块的过期时间改为清单过期时间加余量(永不过期的去掉过期时间)，
+     * 保证分块不会先于清单过期；EXPIRE/PERSIST对不存在的key返回false，借此确认写入期间没有分块已过期
+     */
+    private void finishChunks(final String key, final String version, final int chunks, final long seconds) {
+        for (int from = 0; from < chunks; from += WINDOW * 8) {
+            final int start = from;
+            final int stop = Math.min(from + WINDOW * 8, chunks);
+            List<Object> results = redisTemplate.executePipelined(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    for (int i = start; i < stop; i++) {
+                        byte[] chunkKey = rawKey(chunkKey(key, version, i));
+                        if (-1 == seconds) {
+                            connection.persist(chunkKey);
+                        } else {
+                            connection.expire(chunkKey, seconds + OLD_VERSION_TTL_SECONDS);
+                        }
+                    }
+                    return null;
+                }
+            });
+            for (Object result : results) {
+                if (!Boolean.TRUE.equals(result)) {
+                    throw new IllegalStateException("large object " + key + " chunks expired before write completed, "
+                            + "write must finish within " + properties.getPendingTtl());
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除或延迟过期某个版本的分块
+     *
+     * @param seconds 0=立即删除；否则设置过期时间
+     */
+    private void deleteChunks(final String key, final String version, final int chunks, final long seconds) {
+        for (int from = 0; from < chunks; from += WINDOW * 8) {
+            final int start = from;
+            final int stop = Math.min(from + WINDOW * 8, chunks);
+            redisTemplate.executePipelined(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    for (int i = start; i < stop; i++) {
+                        byte[] chunkKey = rawKey(chunkKey(key, version, i));
+                        if (seconds > 0) {
+                            connection.expire(chunkKey, seconds);
+                        } else {
+                            connection.del(chunkKey);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * 读满一个分块，流结束时返回不足一块的剩余部分，没有数据返回null
+     */
+    private static byte[] readChunk(final InputStream in, final int chunkSize) throws IOException {
+        byte[] buffer = new byte[chunkSize];
+        int read = 0;
+        while (read < chunkSize) {
+            int n = in.read(buffer, read, chunkSize - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        if (read == 0) {
+            return null;
+        }
+        return read == chunkSize ? buffer : Arrays.copyOf(buffer, read);
+    }
+
+    /**
+     * 清单被替换或删除，使热点key的本地缓存失效
+     */
+    private void recordWrite(final String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.recordWrite(key);
+        }
+    }
+
+    private static String chunkKey(final String key, final String version, final int index) {
+        return key + ":" + version + ":" + index;
+    }
+
+    private byte[] rawKey(final String key) {
+        return redisTemplate.getKeySerializer().serialize(key);
+    }
+
+    /**
+     * 大对象清单
+     */
+    public static final class Manifest {
+
+        private final String version;
+        private final int chunks;
+        private final long size;
+        private final int chunkSize;
+
+        Manifest(final String version, final int chunks, final long size, final int chunkSize) {
+            this.version = version;
+            this.chunks = chunks;
+            this.size = size;
+            this.chunkSize = chunkSize;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+    }
+}
@@ -31,23 +31,34 @@ public class RedisLock {
      * @return boolean
      **/
     public boolean lock(){
+        return lock(lockKey);
+    }
+
+    /**
+     * 获取指定key的锁
+     * @Author fuGaga
+     * @Date 2021/8/10 16:00
+     * @Param [key]
+     * @return boolean
+     **/
+    public boolean lock(final String key){
         return (Boolean)redisTemplate.execute(new RedisCallback() {
             @Override
             public Object doInRedis(RedisConnection connection) throws DataAccessException {
                 long nowTime = System.currentTimeMillis();
                 //setNX获取锁
-                boolean acquire = connection.setNX(lockKey.getBytes(), String.valueOf(nowTime + lockExpireMils + 1).getBytes());
+                boolean acquire = connection.setNX(key.getBytes(), String.valueOf(nowTime + lockExpireMils + 1).getBytes());
                 if(acquire){
                     return Boolean.TRUE;
                 }else{
                     //获取失败，查询已存在的锁key是否过期
-                    byte[] value = connection.get(lockKey.getBytes());
+                    byte[] value = connection.get(key.getBytes());
                     if(Objects.nonNull(value) && value.length > 0){
-                        long oldTime = Long.parseLong(String.valueOf(value));
+                        long oldTime = Long.parseLong(new String(value));
                         if(oldTime < nowTime){
                             //已过期，返回这个旧值，并重新设置新值，防止死锁
-                            byte[] oldValue = connection.getSet(lockKey.getBytes(), String.valueOf(nowTime + lockExpireMils + 1).getBytes());
-                            return null == oldValue ? false : Long.parseLong(String.valueOf(oldValue)) < nowTime;
+                            byte[] oldValue = connection.getSet(key.getBytes(), String.valueOf(nowTime + lockExpireMils + 1).getBytes());
+                            return null == oldValue ? false : Long.parseLong(new String(oldValue)) < nowTime;
                         }
                     }
                 }
@@ -63,6 +74,17 @@ public class RedisLock {
      * @return void
      **/
     public void delLock(){
-        redisTemplate.delete(lockKey);
+        delLock(lockKey);
+    }
+
+    /**
+     * 删除指定key的锁
+     * @Author fuGaga
+     * @Date 2021/8/10 16:00
+     * @Param [key]
+     * @return void
+     **/
+    public void delLock(final String key){
+        redisTemplate.delete(key);
     }
 }
@@ -0,0 +1,542 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * RedisTemplateService的超时、对冲读、熔断和并发隔离
+ * <p>
+ * 每个操作分类(read/write/bulk)有独立的并发上限，命令在调用线程中执行，按分类的超时由Lettuce驱动的命令超时实现
+ * (见{@link LettuceTimeoutCustomizer})，超时后连接仍可继续使用；最近调用中连接失败和超时的比例超过阈值时熔断，
+ * 熔断期间直接失败，命令本身的错误(如WRONGTYPE、序列化失败)不计入失败率；读请求可用本地缓存的旧值兜底。
+ * 配置了从库replicaRedisTemplate时，主库读超过历史百分位延迟仍未返回则由有界的对冲线程池向从库发起对冲读，
+ * 主库失败或超时时使用从库的结果，主库命令始终在调用线程执行。超时的写命令可能已在Redis执行
+ *
+ * @Author fuGaga
+ * @Date 2021/6/22 14:00
+ * @Version 1.0
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class RedisResilience implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisResilience.class);
+
+    /**单key读 */
+    public static final String READ = "read";
+    /**写 */
+    public static final String WRITE = "write";
+    /**返回整个集合的大key读，如hashGetAll、getSetAll */
+    public static final String BULK = "bulk";
+    /**阻塞命令，如带等待时间的listPopTimeOut，单独隔离并发，驱动层不设置超时 */
+    public static final String BLOCKING = "blocking";
+
+    /**按命令名划分操作分类，用于驱动层的命令超时 */
+    private static final Set<String> BULK_COMMANDS = commands("HGETALL", "HKEYS", "HVALS", "SMEMBERS", "SUNION", "SINTER",
+            "SDIFF", "ZRANGE", "ZREVRANGE", "ZRANGEBYSCORE", "ZREVRANGEBYSCORE", "ZRANGEBYLEX", "ZREVRANGEBYLEX", "LRANGE",
+            "MGET", "HMGET", "KEYS", "SCAN", "SSCAN", "HSCAN", "ZSCAN", "SORT");
+    private static final Set<String> WRITE_COMMANDS = commands("SET", "SETEX", "PSETEX", "SETNX", "SETRANGE", "APPEND",
+            "MSET", "MSETNX", "GETSET", "INCR", "INCRBY", "INCRBYFLOAT", "DECR", "DECRBY", "DEL", "UNLINK", "EXPIRE",
+            "PEXPIRE", "EXPIREAT", "PEXPIREAT", "PERSIST", "RENAME", "RENAMENX", "HSET", "HSETNX", "HMSET", "HDEL",
+            "HINCRBY", "HINCRBYFLOAT", "SADD", "SREM", "SPOP", "SMOVE", "SINTERSTORE", "SUNIONSTORE", "SDIFFSTORE", "ZADD",
+            "ZREM", "ZINCRBY", "ZREMRANGEBYSCORE", "ZREMRANGEBYRANK", "ZREMRANGEBYLEX", "ZUNIONSTORE", "ZINTERSTORE",
+            "ZPOPMIN", "ZPOPMAX", "LPUSH", "RPUSH", "LPUSHX", "RPUSHX", "LPOP", "RPOP", "LSET", "LREM", "LTRIM", "LINSERT",
+            "RPOPLPUSH", "PFADD", "PFMERGE", "SETBIT", "BITOP", "EVAL", "EVALSHA", "EXEC", "PUBLISH");
+    /**阻塞命令和订阅命令自带等待时间，不设置命令超时 */
+    private static final Set<String> BLOCKING_COMMANDS = commands("BLPOP", "BRPOP", "BRPOPLPUSH", "BZPOPMIN", "BZPOPMAX",
+            "XREAD", "XREADGROUP", "WAIT", "SUBSCRIBE", "PSUBSCRIBE", "UNSUBSCRIBE", "PUNSUBSCRIBE", "MONITOR");
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    /**从库，开启对冲读时使用 */
+    @Autowired(required = false)
+    @Qualifier("replicaRedisTemplate")
+    private RedisTemplate replicaRedisTemplate;
+
+    private final RedisUtilsProperties.Resilience properties;
+
+    /**对冲读线程池，未开启对冲读时为null */
+    private final ThreadPoolExecutor hedgeExecutor;
+    /**到达对冲延迟时向对冲线程池提交从库读，未开启对冲读时为null */
+    private final ScheduledThreadPoolExecutor hedgeTimer;
+    private final ConcurrentHashMap<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final CircuitBreaker circuitBreaker;
+    /**兜底缓存，Redis键 -> 调用标识 -> 旧值 */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, StaleEntry>> staleCache = new ConcurrentHashMap<>();
+
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+
+    public RedisResilience(final RedisUtilsProperties.Resilience properties) {
+        this.properties = properties;
+        this.circuitBreaker = new CircuitBreaker(properties);
+        if (properties.isHedgeEnabled()) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            // 不排队，线程都忙时放弃本次对冲
+            this.hedgeExecutor = new ThreadPoolExecutor(properties.getHedgeThreads(), properties.getHedgeThreads(),
+                    60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "redis-hedge-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.hedgeExecutor.allowCoreThreadTimeOut(true);
+            this.hedgeTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "redis-hedge-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.hedgeTimer.setRemoveOnCancelPolicy(true);
+        } else {
+            this.hedgeExecutor = null;
+            this.hedgeTimer = null;
+        }
+    }
+
+    /**
+     * 命令所属的操作分类，用于驱动层的命令超时
+     *
+     * @param command 命令名，如GET、HGETALL
+     * @return read/write/bulk，阻塞命令返回null表示不设置超时
+     */
+    public static String operationOf(final String command) {
+        if (BLOCKING_COMMANDS.contains(command)) {
+            return null;
+        }
+        if (WRITE_COMMANDS.contains(command)) {
+            return WRITE;
+        }
+        return BULK_COMMANDS.contains(command) ? BULK : READ;
+    }
+
+    /**
+     * 执行读操作
+     *
+     * @param operation 操作分类
+     * @param key       Redis键
+     * @param call      调用标识(方法名和参数)，与key一起作为兜底缓存键，不需要兜底传null
+     * @param action    读操作，参数为主库或从库的RedisTemplate
+     * @return T
+     * @Author fuGaga
+     * @Date 2021/6/22 14:20
+     **/
+    public <T> T read(final String operation, final String key, final String call,
+                      final Function<RedisTemplate, T> action) {
+        boolean stale = call != null && properties.isStaleCacheEnabled();
+        try {
+            T value = execute(operation, action, hedgeExecutor != null && replicaRedisTemplate != null);
+            if (stale) {
+                putStale(key, call, value);
+            }
+            return value;
+        } catch (DataAccessException e) {
+            Map<String, StaleEntry> calls = stale ? staleCache.get(key) : null;
+            StaleEntry entry = calls == null ? null : calls.get(call);
+            if (entry != null && entry.expireAt > System.nanoTime()) {
+                staleHits.increment();
+                log.debug("redis {} failed, use stale value of {} {}", operation, key, call, e);
+                return (T) entry.value;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 执行写操作，不对冲、不兜底
+     *
+     * @param operation 操作分类
+     * @param action    写操作
+     * @return T
+     * @Author fuGaga
+     * @Date 2021/6/22 14:20
+     **/
+    public <T> T write(final String operation, final Function<RedisTemplate, T> action) {
+        return execute(operation, action, false);
+    }
+
+    /**
+     * 使key的兜底缓存失效，写操作后调用
+     *
+     * @param key Redis键
+     */
+    public void invalidateStale(final String key) {
+        if (properties.isStaleCacheEnabled()) {
+            staleCache.remove(key);
+        }
+    }
+
+    private <T> T execute(final String operation, final Function<RedisTemplate, T> action, final boolean hedge) {
+        if (!circuitBreaker.allowRequest()) {
+            throw new DataAccessResourceFailureException("redis circuit breaker is open");
+        }
+        Semaphore bulkhead = bulkheads.computeIfAbsent(operation, op -> new Semaphore(properties.maxConcurrencyOf(op)));
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire(properties.getBulkheadMaxWait().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessResourceFailureException("interrupted while waiting for redis bulkhead", e);
+        }
+        if (!acquired) {
+            rejected.increment();
+            // 并发已满是本地限流，不计入熔断失败率，但要归还半开探测名额
+            circuitBreaker.release();
+            throw new DataAccessResourceFailureException("redis bulkhead '" + operation + "' is full");
+        }
+        long start = System.nanoTime();
+        HedgedRead<T> hedgedRead = hedge ? scheduleHedge(operation, action) : null;
+        try {
+            T value = action.apply(redisTemplate);
+            latency(operation).record(System.nanoTime() - start);
+            circuitBreaker.onSuccess();
+            return value;
+        } catch (RuntimeException e) {
+            if (!isFailure(e)) {
+                // Redis已响应，命令本身出错不代表Redis不可用
+                circuitBreaker.onSuccess();
+                throw e;
+            }
+            if (e instanceof QueryTimeoutException) {
+                timeouts.increment();
+            }
+            circuitBreaker.onFailure();
+            if (hedgedRead != null && hedgedRead.submitted) {
+                return awaitReplica(operation, hedgedRead.result, e, start);
+            }
+            throw e;
+        } finally {
+            if (hedgedRead != null) {
+                hedgedRead.timer.cancel(false);
+            }
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * 连接失败和超时计入熔断失败率
+     */
+    static boolean isFailure(final RuntimeException e) {
+        return e instanceof RedisConnectionFailureException || e instanceof QueryTimeoutException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    /**
+     * 主库读超过历史百分位延迟仍未返回时，向对冲线程池提交从库读，线程都忙时放弃本次对冲
+     */
+    private <T> HedgedRead<T> scheduleHedge(final String operation, final Function<RedisTemplate, T> action) {
+        long hedgeDelay = Math.max(latency(operation).percentile(properties.getHedgePercentile()),
+                properties.getHedgeMinDelay().toNanos());
+        if (hedgeDelay >= properties.timeoutOf(operation).toNanos()) {
+            return null;
+        }
+        HedgedRead<T> hedgedRead = new HedgedRead<>();
+        hedgedRead.timer = hedgeTimer.schedule(() -> {
+            try {
+                hedgeExecutor.execute(() -> {
+                    try {
+                        hedgedRead.result.complete(action.apply(replicaRedisTemplate));
+                    } catch (Throwable e) {
+                        hedgedRead.result.completeExceptionally(e);
+                    }
+                });
+                hedgedRead.submitted = true;
+                hedged.increment();
+            } catch (RejectedExecutionException e) {
+                log.debug("redis hedge pool is full, skip hedged {}", operation);
+            }
+        }, hedgeDelay, TimeUnit.NANOSECONDS);
+        return hedgedRead;
+    }
+
+    /**
+     * 主库失败后等待已发出的从库读，等待不超过该分类的超时；从库也失败时抛出主库的异常
+     */
+    private <T> T awaitReplica(final String operation, final CompletableFuture<T> replica,
+                               final RuntimeException primaryError, final long start) {
+        long remaining = start + properties.timeoutOf(operation).toNanos() - System.nanoTime();
+        try {
+            return replica.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            primaryError.addSuppressed(e instanceof ExecutionException ? translate(e.getCause()) : e);
+            throw primaryError;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw primaryError;
+        }
+    }
+
+    private static RuntimeException translate(final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new RedisSystemException("redis command failed", cause);
+    }
+
+    private LatencyTracker latency(final String operation) {
+        return latencies.computeIfAbsent(operation, op -> new LatencyTracker(1024));
+    }
+
+    private void putStale(final String key, final String call, final Object value) {
+        if (value == null) {
+            Map<String, StaleEntry> calls = staleCache.get(key);
+            if (calls != null) {
+                calls.remove(call);
+            }
+            return;
+        }
+        if (staleCache.size() >= properties.getStaleCacheMaxSize() && !staleCache.containsKey(key)) {
+            long now = System.nanoTime();
+            staleCache.values().removeIf(calls -> {
+                calls.values().removeIf(entry -> entry.expireAt < now);
+                return calls.isEmpty();
+            });
+            if (staleCache.size() >= properties.getStaleCacheMaxSize()) {
+                return;
+            }
+        }
+        staleCache.computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                .put(call, new StaleEntry(value, System.nanoTime() + properties.getStaleCacheTtl().toNanos()));
+    }
+
+    @Override
+    public void destroy() {
+        if (hedgeExecutor != null) {
+            hedgeTimer.shutdownNow();
+            hedgeExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 熔断器状态：CLOSED/OPEN/HALF_OPEN
+     *
+     * @return java.lang.String
+     */
+    public String getCircuitState() {
+        return circuitBreaker.state().name();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getHedgedCount() {
+        return hedged.sum();
+    }
+
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    private static Set<String> commands(final String... names) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+    }
+
+    /**
+     * 一次对冲读：定时器、是否已向从库发出、从库结果
+     */
+    private static final class HedgedRead<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile boolean submitted;
+        private ScheduledFuture<?> timer;
+    }
+
+    private static final class StaleEntry {
+        private final Object value;
+        private final long expireAt;
+
+        private StaleEntry(final Object value, final long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 最近N次调用的延迟，百分位每秒最多重新计算一次
+     */
+    static final class LatencyTracker {
+
+        private final AtomicLongArray samples;
+        private final AtomicLong count = new AtomicLong();
+
+        private volatile long cachedAt;
+        private volatile int cachedPercentile = -1;
+        private volatile long cachedValue;
+
+        LatencyTracker(final int size) {
+            this.samples = new AtomicLongArray(size);
+        }
+
+        void record(final long nanos) {
+            samples.set((int) (count.getAndIncrement() % samples.length()), nanos);
+        }
+
+        long percentile(final int percentile) {
+            long now = System.nanoTime();
+            if (cachedPercentile == percentile && now - cachedAt < TimeUnit.SECONDS.toNanos(1)) {
+                return cachedValue;
+            }
+            int size = (int) Math.min(count.get(), samples.length());
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            long value = sorted[Math.min(size - 1, (int) Math.ceil(size * percentile / 100.0) - 1)];
+            cachedValue = value;
+            cachedPercentile = percentile;
+            cachedAt = now;
+            return value;
+        }
+    }
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 基于最近N次调用失败率的熔断器，无锁实现，CLOSED状态下放行只需读一次状态
+     */
+    static final class CircuitBreaker {
+
+        private final RedisUtilsProperties.Resilience properties;
+        private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+        /**当前统计窗口，状态切换时整体替换 */
+        private volatile Window window;
+        private volatile long openedAt;
+        /**半开状态下是否已放行探测请求 */
+        private final AtomicBoolean probing = new AtomicBoolean();
+
+        CircuitBreaker(final RedisUtilsProperties.Resilience properties) {
+            this.properties = properties;
+            this.window = new Window(properties.getSlidingWindowSize());
+        }
+
+        State state() {
+            return state.get();
+        }
+
+        boolean allowRequest() {
+            State current = state.get();
+            if (current == State.CLOSED) {
+                return true;
+            }
+            if (current == State.OPEN) {
+                if (System.nanoTime() - openedAt < properties.getOpenDuration().toNanos()) {
+                    return false;
+                }
+                state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            }
+            return state.get() == State.HALF_OPEN && probing.compareAndSet(false, true);
+        }
+
+        void release() {
+            probing.set(false);
+        }
+
+        void onSuccess() {
+            if (state.get() == State.HALF_OPEN) {
+                window = new Window(properties.getSlidingWindowSize());
+                if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                    probing.set(false);
+                    log.info("redis circuit breaker closed");
+                }
+                return;
+            }
+            window.record(false);
+        }
+
+        void onFailure() {
+            if (state.get() == State.HALF_OPEN) {
+                if (open(State.HALF_OPEN)) {
+                    log.warn("redis circuit breaker probe failed, opened again");
+                }
+                return;
+            }
+            Window current = window;
+            current.record(true);
+            int calls = current.calls.get();
+            int failures = current.failures.get();
+            if (calls >= properties.getMinimumCalls()
+                    && failures * 100 >= properties.getFailureRateThreshold() * calls && open(State.CLOSED)) {
+                log.warn("redis circuit breaker opened, failures {}/{}", failures, calls);
+            }
+        }
+
+        private boolean open(final State expected) {
+            // 先写openedAt再切换状态，读到OPEN的线程一定能看到新的openedAt
+            openedAt = System.nanoTime();
+            if (!state.compareAndSet(expected, State.OPEN)) {
+                return false;
+            }
+            window = new Window(properties.getSlidingWindowSize());
+            probing.set(false);
+            return true;
+        }
+    }
+
+    /**
+     * 熔断器的滑动窗口，记录最近N次调用是否失败
+     */
+    private static final class Window {
+
+        private static final int EMPTY = 0;
+        private static final int SUCCESS = 1;
+        private static final int FAILURE = 2;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong index = new AtomicLong();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private Window(final int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        private void record(final boolean failed) {
+            int slot = (int) (index.getAndIncrement() % outcomes.length());
+            int previous = outcomes.getAndSet(slot, failed ? FAILURE : SUCCESS);
+            if (previous == EMPTY) {
+                calls.incrementAndGet();
+            } else if (previous == FAILURE) {
+                failures.decrementAndGet();
+            }
+            if (failed) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+}
@@ -3,12 +3,28 @@ package com.gaga.redisutils.redisUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.DigestUtils;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.gaga.redisutils.redisUtil.RedisResilience.BLOCKING;
+import static com.gaga.redisutils.redisUtil.RedisResilience.BULK;
+import static com.gaga.redisutils.redisUtil.RedisResilience.READ;
+import static com.gaga.redisutils.redisUtil.RedisResilience.WRITE;
 
 /**
  * redis工具类
@@ -18,9 +34,43 @@ import java.util.concurrent.TimeUnit;
  */
 public class RedisTemplateService {
 
+    /**集合运算结果key前缀 */
+    private static final String SET_OP_KEY_PREFIX = "redis-utils:setop:";
+
+    /**交集基数，优先使用SINTERCARD(Redis 7.0+)，不支持时退化为服务端SINTER后计数 */
+    private static final DefaultRedisScript<Long> setIntersectCardScript = new DefaultRedisScript<>(
+            "local args = {'SINTERCARD', #KEYS} "
+                    + "for i = 1, #KEYS do args[#args + 1] = KEYS[i] end "
+                    + "args[#args + 1] = 'LIMIT' "
+                    + "args[#args + 1] = ARGV[1] "
+                    + "local ok, count = pcall(redis.call, unpack(args)) "
+                    + "if ok then return count end "
+                    + "local size = #redis.call('SINTER', unpack(KEYS)) "
+                    + "local limit = tonumber(ARGV[1]) "
+                    + "if limit > 0 and size > limit then return limit end "
+                    + "return size", Long.class);
+
+    /**结果key不存在时执行ARGV[1]存储运算(ARGV[3]=1时带numkeys参数)，非空结果设置ARGV[2]秒过期，整体原子执行；结果key已存在返回-1 */
+    private static final DefaultRedisScript<Long> storeCachedScript = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return -1 end "
+                    + "local args = {ARGV[1], KEYS[1]} "
+                    + "if ARGV[3] == '1' then args[#args + 1] = #KEYS - 1 end "
+                    + "for i = 2, #KEYS do args[#args + 1] = KEYS[i] end "
+                    + "local size = redis.call(unpack(args)) "
+                    + "if size > 0 then redis.call('EXPIRE', KEYS[1], ARGV[2]) end "
+                    + "return size", Long.class);
+
     @Autowired
     RedisTemplate redisTemplate;
 
+    /**热点key探测，未开启时为null */
+    @Autowired(required = false)
+    HotKeyDetector hotKeyDetector;
+
+    /**超时、熔断、隔离，未开启时为null */
+    @Autowired(required = false)
+    RedisResilience redisResilience;
+
     /**
      * key键是否存在
      *
@@ -30,7 +80,9 @@ public class RedisTemplateService {
      * @Date 2021/1/28 16:20
      **/
     public boolean hasKey(final String key) {
-        return redisTemplate.hasKey(key);
+        recordRead(key);
+        Boolean ret = read(READ, key, null, t -> t.hasKey(key));
+        return ret != null && ret;
     }
 
     /**
@@ -53,8 +105,8 @@ public class RedisTemplateService {
      * @return true=设置成功；false=设置失败
      */
     public boolean expire(final String key, final long timeout, final TimeUnit unit) {
-
-        Boolean ret = redisTemplate.expire(key, timeout, unit);
+        recordWrite(key);
+        Boolean ret = write(key, t -> t.expire(key, timeout, unit));
         return ret != null && ret;
     }
 
@@ -65,8 +117,9 @@ public class RedisTemplateService {
      * @return true=删除成功；false=删除失败
      */
     public boolean delKey(final String key) {
+        recordWrite(key);
 
-        Boolean ret = redisTemplate.delete(key);
+        Boolean ret = write(key, t -> t.delete(key));
         return ret != null && ret;
     }
 
@@ -77,8 +130,10 @@ public class RedisTemplateService {
      * @return 成功删除的个数
      */
     public long delKeys(final Collection<String> keys) {
-
-        Long ret = redisTemplate.delete(keys);
+        for (String key : keys) {
+            recordWrite(key);
+        }
+        Long ret = write(WRITE, keys, t -> t.delete(keys));
         return ret == null ? 0 : ret;
     }
 
@@ -89,8 +144,12 @@ public class RedisTemplateService {
      * @param value 值
      */
     public void setValue(final String key, final Object value) {
+        recordWrite(key);
         //redisTemplate.opsForValue().set(key, value, 1, TimeUnit.MINUTES);
-        redisTemplate.opsForValue().set(key, value);
+        write(key, t -> {
+            t.opsForValue().set(key, value);
+            return null;
+        });
     }
 
     // 存储普通对象操作
@@ -103,7 +162,11 @@ public class RedisTemplateService {
      * @param timeout 有效期，单位秒
      */
     public void setValueTimeout(final String key, final Object value, final long timeout) {
-        redisTemplate.opsForValue().set(key, value, timeout, TimeUnit.SECONDS);
+        recordWrite(key);
+        write(key, t -> {
+            t.opsForValue().set(key, value, timeout, TimeUnit.SECONDS);
+            return null;
+        });
     }
 
     /**
@@ -117,7 +180,11 @@ public class RedisTemplateService {
      * @Date 2021/1/28 16:33
      **/
     public void setValueRange(final String key, final Object value, final long offset) {
-        redisTemplate.opsForValue().set(key, value, offset);
+        recordWrite(key);
+        write(key, t -> {
+            t.opsForValue().set(key, value, offset);
+            return null;
+        });
     }
 
     /**
@@ -127,8 +194,14 @@ public class RedisTemplateService {
      * @return 对象
      */
     public Object getValue(final String key) {
-
-        return redisTemplate.opsForValue().get(key);
+        recordRead(key);
+        Object local = getLocal(key);
+        if (local != null) {
+            return local;
+        }
+        Object value = read(READ, key, "getValue", t -> t.opsForValue().get(key));
+        putLocal(key, value);
+        return value;
     }
 
     // 存储Hash操作
@@ -141,8 +214,9 @@ public class RedisTemplateService {
      * @return true=存在；false=不存在
      */
     public boolean hasHashKey(final String key, String hkey) {
+        recordRead(key);
 
-        Boolean ret = redisTemplate.opsForHash().hasKey(key, hkey);
+        Boolean ret = read(READ, key, null, t -> t.opsForHash().hasKey(key, hkey));
         return ret != null && ret;
     }
 
@@ -154,8 +228,12 @@ public class RedisTemplateService {
      * @param value 值
      */
     public void hashPut(final String key, final String hKey, final Object value) {
+        recordWrite(key);
 
-        redisTemplate.opsForHash().put(key, hKey, value);
+        write(key, t -> {
+            t.opsForHash().put(key, hKey, value);
+            return null;
+        });
     }
 
     /**
@@ -165,8 +243,12 @@ public class RedisTemplateService {
      * @param values Hash键值对
      */
     public void hashPutAll(final String key, final Map<String, Object> values) {
+        recordWrite(key);
 
-        redisTemplate.opsForHash().putAll(key, values);
+        write(key, t -> {
+            t.opsForHash().putAll(key, values);
+            return null;
+        });
     }
 
     /**
@@ -177,8 +259,9 @@ public class RedisTemplateService {
      * @return Hash中的对象
      */
     public Object hashGet(final String key, final String hKey) {
+        recordRead(key);
 
-        return redisTemplate.opsForHash().get(key, hKey);
+        return read(READ, key, "hashGet|" + hKey, t -> t.opsForHash().get(key, hKey));
     }
 
     /**
@@ -188,7 +271,14 @@ public class RedisTemplateService {
      * @return Hash对象
      */
     public Map<Object, Object> hashGetAll(final String key) {
-        return redisTemplate.opsForHash().entries(key);
+        recordRead(key);
+        Object local = getLocal(key);
+        if (local != null) {
+            return (Map<Object, Object>) local;
+        }
+        Map<Object, Object> entries = read(BULK, key, "hashGetAll", t -> t.opsForHash().entries(key));
+        putLocal(key, entries);
+        return entries;
     }
 
     /**
@@ -199,8 +289,9 @@ public class RedisTemplateService {
      * @return Hash对象集合
      */
     public List<Object> hashMultiGet(final String key, final Collection<Object> hKeys) {
+        recordRead(key);
 
-        return redisTemplate.opsForHash().multiGet(key, hKeys);
+        return read(READ, key, null, t -> t.opsForHash().multiGet(key, hKeys));
     }
 
     /**
@@ -211,7 +302,9 @@ public class RedisTemplateService {
      * @return Hash对象集合
      */
     public long hashDeleteKeys(final String key, final Collection<Object> hKeys) {
-        return redisTemplate.opsForHash().delete(key, hKeys);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForHash().delete(key, hKeys.toArray()));
+        return count == null ? 0 : count;
     }
 
     /**
@@ -224,7 +317,9 @@ public class RedisTemplateService {
      * @return long
      **/
     public long hashIncrement(final String key, final String hKey, final long delta){
-        return redisTemplate.opsForHash().increment(key, hKey, delta);
+        recordWrite(key);
+        Long value = write(key, t -> t.opsForHash().increment(key, hKey, delta));
+        return value == null ? 0 : value;
     }
     /**
      * 增加Hash中数据的数值，返回当前数值
@@ -236,7 +331,9 @@ public class RedisTemplateService {
      * @return long
      **/
     public double hashIncrement(final String key, final String hKey, final double delta){
-        return redisTemplate.opsForHash().increment(key, hKey, delta);
+        recordWrite(key);
+        Double value = write(key, t -> t.opsForHash().increment(key, hKey, delta));
+        return value == null ? 0 : value;
     }
 
     // 存储Set相关操作
@@ -249,7 +346,8 @@ public class RedisTemplateService {
      * @return 存入的个数
      */
     public long setSet(final String key, final Object... values) {
-        Long count = redisTemplate.opsForSet().add(key, values);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForSet().add(key, values));
         return count == null ? 0 : count;
     }
 
@@ -261,7 +359,8 @@ public class RedisTemplateService {
      * @return 移除的个数
      */
     public long setDel(final String key, final Object... values) {
-        Long count = redisTemplate.opsForSet().remove(key, values);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForSet().remove(key, values));
         return count == null ? 0 : count;
     }
 
@@ -272,7 +371,8 @@ public class RedisTemplateService {
      * @return set集合
      */
     public Set<Object> getSetAll(final String key) {
-        return redisTemplate.opsForSet().members(key);
+        recordRead(key);
+        return read(BULK, key, "getSetAll", t -> t.opsForSet().members(key));
     }
 
     /**
@@ -284,7 +384,8 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public Set<Object> setIntersect(final String key, final String otherKey){
-        return redisTemplate.opsForSet().intersect(key, otherKey);
+        recordRead(key);
+        return read(BULK, key, null, t -> t.opsForSet().intersect(key, otherKey));
     }
 
     /**
@@ -296,7 +397,8 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public Set<Object> setIntersect(final String key, final List<String> otherKeys){
-        return redisTemplate.opsForSet().intersect(key, otherKeys);
+        recordRead(key);
+        return read(BULK, key, null, t -> t.opsForSet().intersect(key, otherKeys));
     }
 
     /**
@@ -308,7 +410,8 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public Set<Object> setUnion(final String key, final List<String> otherKeys){
-        return redisTemplate.opsForSet().union(key, otherKeys);
+        recordRead(key);
+        return read(BULK, key, null, t -> t.opsForSet().union(key, otherKeys));
     }
 
     /**
@@ -320,7 +423,8 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public Set<Object> setDifference(final String key, final List<String> otherKeys){
-        return redisTemplate.opsForSet().difference(key, otherKeys);
+        recordRead(key);
+        return read(BULK, key, null, t -> t.opsForSet().difference(key, otherKeys));
     }
 
     /**
@@ -332,7 +436,8 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public List<Object> setRandomMembers(final String key, final long count){
-        return redisTemplate.opsForSet().randomMembers(key, count);
+        recordRead(key);
+        return read(READ, key, null, t -> t.opsForSet().randomMembers(key, count));
     }
 
     /**
@@ -344,9 +449,110 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public Set<Object> setDistinctRandomMembers(final String key, final long count){
-        return redisTemplate.opsForSet().distinctRandomMembers(key, count);
+        recordRead(key);
+        return read(READ, key, null, t -> t.opsForSet().distinctRandomMembers(key, count));
+    }
+
+
+    /**
+     * 获取set集合的元素个数
+     * @Author fuGaga
+     * @Date 2021/7/6 10:05
+     * @param key Redis键
+     * @return long
+     **/
+    public long setSize(final String key) {
+        recordRead(key);
+        Long size = read(READ, key, null, t -> t.opsForSet().size(key));
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * 在服务端计算多个set集合交集的元素个数，不传输交集内容
+     * @Author fuGaga
+     * @Date 2021/7/6 10:05
+     * @param keys Redis键
+     * @param limit 计数上限，达到后提前结束，0表示不限制
+     * @return long
+     **/
+    public long setIntersectCount(final List<String> keys, final long limit) {
+        for (String key : keys) {
+            recordRead(key);
+        }
+        Long count = read(BULK, null, null, t -> (Long) t.execute(setIntersectCardScript, new StringRedisSerializer(),
+                new StringRedisSerializer(), keys, String.valueOf(limit)));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 在服务端计算多个set集合的交集并缓存到结果key，结果key由输入key生成，存在时直接复用
+     * @Author fuGaga
+     * @Date 2021/7/6 10:20
+     * @param key Redis键
+     * @param otherKeys 另一些key
+     * @param seconds 结果key过期时间(秒)
+     * @return java.lang.String 结果key，可用setSize、setScan读取；交集为空时结果key不存在
+     **/
+    public String setIntersectAndStore(final String key, final List<String> otherKeys, final long seconds) {
+        final String destKey = setOpKey("sinter", key, otherKeys, true);
+        return storeCached(destKey, seconds, "SINTERSTORE", false, key, otherKeys);
     }
 
+    /**
+     * 在服务端计算多个set集合的并集并缓存到结果key，结果key由输入key生成，存在时直接复用
+     * @Author fuGaga
+     * @Date 2021/7/6 10:20
+     * @param key Redis键
+     * @param otherKeys 另一些key
+     * @param seconds 结果key过期时间(秒)
+     * @return java.lang.String 结果key
+     **/
+    public String setUnionAndStore(final String key, final List<String> otherKeys, final long seconds) {
+        final String destKey = setOpKey("sunion", key, otherKeys, true);
+        return storeCached(destKey, seconds, "SUNIONSTORE", false, key, otherKeys);
+    }
+
+    /**
+     * 在服务端计算set集合与另一些集合的差集并缓存到结果key，结果key由输入key生成，存在时直接复用
+     * @Author fuGaga
+     * @Date 2021/7/6 10:20
+     * @param key Redis键
+     * @param otherKeys 另一些key
+     * @param seconds 结果key过期时间(秒)
+     * @return java.lang.String 结果key
+     **/
+    public String setDifferenceAndStore(final String key, final List<String> otherKeys, final long seconds) {
+        final String destKey = setOpKey("sdiff", key, otherKeys, false);
+        return storeCached(destKey, seconds, "SDIFFSTORE", false, key, otherKeys);
+    }
+
+    /**
+     * 分批遍历set集合(SSCAN)，适合遍历集合运算的结果key，不会一次性取回全部元素
+     * @Author fuGaga
+     * @Date 2021/7/6 10:40
+     * @param key Redis键
+     * @param count 每批的元素个数提示
+     * @param action 元素处理
+     * @return void
+     **/
+    public void setScan(final String key, final long count, final Consumer<Object> action) {
+        recordRead(key);
+        read(BULK, key, null, t -> {
+            Cursor<Object> cursor = t.opsForSet().scan(key, ScanOptions.scanOptions().count(count).build());
+            try {
+                while (cursor.hasNext()) {
+                    action.accept(cursor.next());
+                }
+            } finally {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    // 关闭游标失败不影响已遍历的结果
+                }
+            }
+            return null;
+        });
+    }
 
     // 存储ZSet相关操作
 
@@ -358,7 +564,8 @@ public class RedisTemplateService {
      * @return 存入的个数
      */
     public long zsetSet(final String key, final Set<ZSetOperations.TypedTuple<Object>> values) {
-        Long count = redisTemplate.opsForZSet().add(key, values);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForZSet().add(key, values));
         return count == null ? 0 : count;
     }
 
@@ -371,7 +578,8 @@ public class RedisTemplateService {
      * @return true存入成功，false失败
      */
     public boolean zsetSet(final String key, final Object value, double score) {
-        Boolean bool = redisTemplate.opsForZSet().add(key, value, score);
+        recordWrite(key);
+        Boolean bool = write(key, t -> t.opsForZSet().add(key, value, score));
         return bool != null && bool;
     }
 
@@ -384,7 +592,8 @@ public class RedisTemplateService {
      * @return
      */
     public Set<Object> zsetGet(final String key, final long start, final long end) {
-        return redisTemplate.opsForZSet().range(key, start, end);
+        recordRead(key);
+        return read(BULK, key, "zsetGet|" + start + "|" + end, t -> t.opsForZSet().range(key, start, end));
     }
 
 
@@ -397,7 +606,8 @@ public class RedisTemplateService {
      * @return
      */
     public Set<Object> zsetReverseGet(final String key, final long start, final long end) {
-        return redisTemplate.opsForZSet().reverseRange(key, start, end);
+        recordRead(key);
+        return read(BULK, key, "zsetReverseGet|" + start + "|" + end, t -> t.opsForZSet().reverseRange(key, start, end));
     }
 
     /**
@@ -408,7 +618,8 @@ public class RedisTemplateService {
      * @return 移除的个数
      */
     public long zsetDel(final String key, final Set<ZSetOperations.TypedTuple<Object>> values) {
-        Long count = redisTemplate.opsForZSet().remove(key, values);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForZSet().remove(key, values));
         return count == null ? 0 : count;
     }
 
@@ -420,7 +631,8 @@ public class RedisTemplateService {
      * @return 移除的个数
      */
     public long zsetDel(final String key, final Object values) {
-        Long count = redisTemplate.opsForZSet().remove(key, values);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForZSet().remove(key, values));
         return count == null ? 0 : count;
     }
 
@@ -434,7 +646,8 @@ public class RedisTemplateService {
      * @return java.lang.Double
      **/
     public Double zsetIncrementScore(final String key, final Object value, final Double score){
-        return redisTemplate.opsForZSet().incrementScore(key, value, score);
+        recordWrite(key);
+        return write(key, t -> t.opsForZSet().incrementScore(key, value, score));
     }
 
     /**
@@ -445,7 +658,8 @@ public class RedisTemplateService {
      * @return java.lang.Long
      **/
     public Long zsetRank(final String key, final Object value){
-        return redisTemplate.opsForZSet().rank(key, value);
+        recordRead(key);
+        return read(READ, key, null, t -> t.opsForZSet().rank(key, value));
     }
 
     /**
@@ -456,7 +670,8 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public Set<Object> zsetRangeByScore(final String key, final double min, final double max){
-        return redisTemplate.opsForZSet().rangeByScore(key, min, max);
+        recordRead(key);
+        return read(BULK, key, "zsetRangeByScore|" + min + "|" + max, t -> t.opsForZSet().rangeByScore(key, min, max));
     }
 
     /**
@@ -467,10 +682,53 @@ public class RedisTemplateService {
      * @return java.util.Set<java.lang.Object>
      **/
     public Set<Object> zsetReverseRangeByScore(final String key, final double min, final double max){
-        return redisTemplate.opsForZSet().reverseRangeByScore(key, min, max);
+        recordRead(key);
+        return read(BULK, key, "zsetReverseRangeByScore|" + min + "|" + max,
+                t -> t.opsForZSet().reverseRangeByScore(key, min, max));
     }
 
 
+    /**
+     * 在服务端计算多个zset的并集(score相加)并缓存到结果key，结果key由输入key生成，存在时直接复用
+     * @Author fuGaga
+     * @Date 2021/7/6 11:00
+     * @param key Redis键
+     * @param otherKeys 另一些key
+     * @param seconds 结果key过期时间(秒)
+     * @return java.lang.String 结果key，可用zsetGet分页读取
+     **/
+    public String zsetUnionAndStore(final String key, final List<String> otherKeys, final long seconds) {
+        final String destKey = setOpKey("zunion", key, otherKeys, true);
+        return storeCached(destKey, seconds, "ZUNIONSTORE", true, key, otherKeys);
+    }
+
+    /**
+     * 在服务端计算多个zset的交集(score相加)并缓存到结果key，结果key由输入key生成，存在时直接复用
+     * @Author fuGaga
+     * @Date 2021/7/6 11:00
+     * @param key Redis键
+     * @param otherKeys 另一些key
+     * @param seconds 结果key过期时间(秒)
+     * @return java.lang.String 结果key，可用zsetGet分页读取
+     **/
+    public String zsetIntersectAndStore(final String key, final List<String> otherKeys, final long seconds) {
+        final String destKey = setOpKey("zinter", key, otherKeys, true);
+        return storeCached(destKey, seconds, "ZINTERSTORE", true, key, otherKeys);
+    }
+
+    /**
+     * 获取zset的元素个数
+     * @Author fuGaga
+     * @Date 2021/7/6 11:00
+     * @param key Redis键
+     * @return long
+     **/
+    public long zsetSize(final String key) {
+        recordRead(key);
+        Long size = read(READ, key, null, t -> t.opsForZSet().zCard(key));
+        return size == null ? 0 : size;
+    }
+
     // 存储List相关操作
 
     /**
@@ -481,7 +739,8 @@ public class RedisTemplateService {
      * @return 存入的个数
      */
     public long listPush(final String key, final Object value) {
-        Long count = redisTemplate.opsForList().rightPush(key, value);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForList().rightPush(key, value));
         return count == null ? 0 : count;
     }
 
@@ -493,7 +752,8 @@ public class RedisTemplateService {
      * @return 存入的个数
      */
     public long listPushAll(final String key, final Collection<Object> values) {
-        Long count = redisTemplate.opsForList().rightPushAll(key, values);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForList().rightPushAll(key, values));
         return count == null ? 0 : count;
     }
 
@@ -505,7 +765,8 @@ public class RedisTemplateService {
      * @return 存入的个数
      */
     public long listPushAll(final String key, final Object... values) {
-        Long count = redisTemplate.opsForList().rightPushAll(key, values);
+        recordWrite(key);
+        Long count = write(key, t -> t.opsForList().rightPushAll(key, values));
         return count == null ? 0 : count;
     }
 
@@ -518,7 +779,8 @@ public class RedisTemplateService {
      * @return List对象
      */
     public List<Object> listGet(final String key, final int start, final int end) {
-        return redisTemplate.opsForList().range(key, start, end);
+        recordRead(key);
+        return read(BULK, key, "listGet|" + start + "|" + end, t -> t.opsForList().range(key, start, end));
     }
 
     /**
@@ -529,7 +791,8 @@ public class RedisTemplateService {
      * @Return java.lang.Object
      **/
     public Object listPop(final String key) {
-        return redisTemplate.opsForList().leftPop(key);
+        recordWrite(key);
+        return write(key, t -> t.opsForList().leftPop(key));
     }
     /**
      * 移除并获取List中第一个元素(如果没有元素，阻塞直到等待超时)
@@ -540,7 +803,252 @@ public class RedisTemplateService {
      * @return java.lang.Object
      **/
     public Object listPopTimeOut(final String key, final long timeOut){
-        return redisTemplate.opsForList().leftPop(key, timeOut, TimeUnit.SECONDS);
+        recordWrite(key);
+        return write(BLOCKING, Collections.singletonList(key), t -> t.opsForList().leftPop(key, timeOut, TimeUnit.SECONDS));
+    }
+
+    // HyperLogLog相关操作
+
+    /**
+     * 往HyperLogLog中添加元素，用于基数统计(如日活)，每个key固定约12KB
+     * @Author fuGaga
+     * @Date 2021/6/15 10:20
+     * @param key Redis键
+     * @param values 元素
+     * @return long 1=基数估算值发生变化；0=未变化
+     **/
+    public long hllAdd(final String key, final Object... values) {
+        recordWrite(key);
+        Long ret = write(key, t -> t.opsForHyperLogLog().add(key, values));
+        return ret == null ? 0 : ret;
+    }
+
+    /**
+     * 获取一个或多个HyperLogLog合并后的基数估算值(标准误差0.81%)
+     * @Author fuGaga
+     * @Date 2021/6/15 10:20
+     * @param keys Redis键
+     * @return long
+     **/
+    public long hllCount(final String... keys) {
+        for (String key : keys) {
+            recordRead(key);
+        }
+        Long ret = read(READ, null, null, t -> t.opsForHyperLogLog().size((Object[]) keys));
+        return ret == null ? 0 : ret;
+    }
+
+    /**
+     * 合并多个HyperLogLog到目标key(如把7天的日活合并为周活)
+     * @Author fuGaga
+     * @Date 2021/6/15 10:20
+     * @param destKey 目标key
+     * @param sourceKeys 源key
+     * @return long 合并后的基数估算值
+     **/
+    public long hllMerge(final String destKey, final String... sourceKeys) {
+        recordWrite(destKey);
+        Long ret = write(destKey, t -> t.opsForHyperLogLog().union(destKey, (Object[]) sourceKeys));
+        return ret == null ? 0 : ret;
+    }
+
+    /**
+     * 通过pipeline批量往多个HyperLogLog中添加元素
+     * @Author fuGaga
+     * @Date 2021/6/15 10:35
+     * @param keyValues Redis键 -> 元素
+     * @return void
+     **/
+    public void batchHllAdd(final Map<String, ? extends Collection<?>> keyValues) {
+        final RedisSerializer valueSerializer = redisTemplate.getValueSerializer();
+        for (String key : keyValues.keySet()) {
+            recordWrite(key);
+        }
+        write(WRITE, keyValues.keySet(), t -> t.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (Map.Entry<String, ? extends Collection<?>> entry : keyValues.entrySet()) {
+                    if (entry.getValue().isEmpty()) {
+                        continue;
+                    }
+                    byte[][] rawValues = new byte[entry.getValue().size()][];
+                    int i = 0;
+                    for (Object value : entry.getValue()) {
+                        rawValues[i++] = valueSerializer.serialize(value);
+                    }
+                    connection.pfAdd(rawKey(entry.getKey()), rawValues);
+                }
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * 通过pipeline批量获取多个HyperLogLog各自的基数估算值
+     * @Author fuGaga
+     * @Date 2021/6/15 10:35
+     * @param keys Redis键
+     * @return java.util.List<java.lang.Long> 与keys顺序一致
+     **/
+    public List<Long> batchHllCount(final List<String> keys) {
+        for (String key : keys) {
+            recordRead(key);
+        }
+        return toLongs(read(BULK, null, null, t -> t.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (String key : keys) {
+                    connection.pfCount(rawKey(key));
+                }
+                return null;
+            }
+        }, null)));
+    }
+
+    // Bitmap相关操作
+
+    /**
+     * 设置bitmap中offset位的值，offset通常为数字id(如用户id)，千万级id约占1.2MB
+     * @Author fuGaga
+     * @Date 2021/6/15 11:02
+     * @param key Redis键
+     * @param offset 位偏移
+     * @param value true=1；false=0
+     * @return boolean 原来的值
+     **/
+    public boolean bitSet(final String key, final long offset, final boolean value) {
+        recordWrite(key);
+        Boolean ret = write(key, t -> t.opsForValue().setBit(key, offset, value));
+        return ret != null && ret;
+    }
+
+    /**
+     * 获取bitmap中offset位的值
+     * @Author fuGaga
+     * @Date 2021/6/15 11:02
+     * @param key Redis键
+     * @param offset 位偏移
+     * @return boolean
+     **/
+    public boolean bitGet(final String key, final long offset) {
+        recordRead(key);
+        Boolean ret = read(READ, key, null, t -> t.opsForValue().getBit(key, offset));
+        return ret != null && ret;
+    }
+
+    /**
+     * 统计bitmap中值为1的位数
+     * @Author fuGaga
+     * @Date 2021/6/15 11:02
+     * @param key Redis键
+     * @return long
+     **/
+    public long bitCount(final String key) {
+        recordRead(key);
+        final byte[] rawKey = rawKey(key);
+        Long ret = read(READ, key, null, t -> (Long) t.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.bitCount(rawKey);
+            }
+        }));
+        return ret == null ? 0 : ret;
+    }
+
+    /**
+     * 通过pipeline批量设置bitmap中多个位的值
+     * @Author fuGaga
+     * @Date 2021/6/15 11:20
+     * @param key Redis键
+     * @param offsets 位偏移
+     * @param value true=1；false=0
+     * @return void
+     **/
+    public void batchBitSet(final String key, final Collection<Long> offsets, final boolean value) {
+        recordWrite(key);
+        final byte[] rawKey = rawKey(key);
+        write(key, t -> t.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (Long offset : offsets) {
+                    connection.setBit(rawKey, offset, value);
+                }
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * 通过pipeline批量统计多个bitmap各自值为1的位数
+     * @Author fuGaga
+     * @Date 2021/6/15 11:20
+     * @param keys Redis键
+     * @return java.util.List<java.lang.Long> 与keys顺序一致
+     **/
+    public List<Long> batchBitCount(final List<String> keys) {
+        for (String key : keys) {
+            recordRead(key);
+        }
+        return toLongs(read(BULK, null, null, t -> t.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (String key : keys) {
+                    connection.bitCount(rawKey(key));
+                }
+                return null;
+            }
+        }, null)));
+    }
+
+    /**
+     * 对多个bitmap做位运算并存入目标key(如多天bitmap做AND得到连续活跃用户)
+     * @Author fuGaga
+     * @Date 2021/6/15 11:40
+     * @param op 位运算：AND/OR/XOR/NOT(NOT只允许一个源key)
+     * @param destKey 目标key
+     * @param keys 源key
+     * @return long 目标key的字节长度
+     **/
+    public long bitOp(final RedisStringCommands.BitOperation op, final String destKey, final String... keys) {
+        recordWrite(destKey);
+        final byte[] rawDestKey = rawKey(destKey);
+        final byte[][] rawKeys = rawKeys(keys);
+        Long ret = write(destKey, t -> (Long) t.execute(new RedisCallback<Long>() {
+            @Override
+            public Long doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.bitOp(op, rawDestKey, rawKeys);
+            }
+        }));
+        return ret == null ? 0 : ret;
+    }
+
+    /**
+     * 在服务端对多个bitmap做位运算并统计结果中值为1的位数，只返回数量，不传输bitmap
+     * @Author fuGaga
+     * @Date 2021/6/15 11:40
+     * @param op 位运算：AND/OR/XOR/NOT(NOT只允许一个源key)
+     * @param destKey 存放运算结果的key
+     * @param seconds 结果key过期时间(秒)，不过期传-1
+     * @param keys 源key
+     * @return long
+     **/
+    public long bitOpCount(final RedisStringCommands.BitOperation op, final String destKey, final long seconds,
+                           final String... keys) {
+        recordWrite(destKey);
+        final byte[] rawDestKey = rawKey(destKey);
+        final byte[][] rawKeys = rawKeys(keys);
+        List<Object> results = write(destKey, t -> t.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.bitOp(op, rawDestKey, rawKeys);
+                connection.bitCount(rawDestKey);
+                if (!(-1 == seconds)) {
+                    connection.expire(rawDestKey, seconds);
+                }
+                return null;
+            }
+        }, null));
+        return toLongs(results.subList(1, 2)).get(0);
     }
 
     /**
@@ -555,7 +1063,10 @@ public class RedisTemplateService {
         Map<String, String> map = new HashMap<>();
         map.put("messageId", UUID.randomUUID().toString());
         map.put("message", message);
-        redisTemplate.convertAndSend(cannel, map.toString());
+        write(WRITE, Collections.<String>emptyList(), t -> {
+            t.convertAndSend(cannel, map.toString());
+            return null;
+        });
     }
 
     /**
@@ -568,7 +1079,10 @@ public class RedisTemplateService {
      * @Date 2021/1/27 17:16
      **/
     public void batchSetKey(final Map<String, String> keyVals, final long seconds) {
-        redisTemplate.executePipelined(new RedisCallback<String>() {
+        for (String key : keyVals.keySet()) {
+            recordWrite(key);
+        }
+        write(WRITE, keyVals.keySet(), t -> t.executePipelined(new RedisCallback<String>() {
             @Override
             public String doInRedis(RedisConnection connection) throws DataAccessException {
                 for (Map.Entry<String, String> key : keyVals.entrySet()) {
@@ -579,7 +1093,7 @@ public class RedisTemplateService {
                 }
                 return null;
             }
-        });
+        }));
     }
 
     /**
@@ -591,7 +1105,10 @@ public class RedisTemplateService {
      * @Date 2021/1/27 22:59
      **/
     public List<Object> batchGetKey(final List<String> keys) {
-        List<Object> objectList = redisTemplate.executePipelined(new RedisCallback<String>() {
+        for (String key : keys) {
+            recordRead(key);
+        }
+        List<Object> objectList = read(BULK, null, null, t -> t.executePipelined(new RedisCallback<String>() {
             @Override
             public String doInRedis(RedisConnection connection) throws DataAccessException {
                 for (String key : keys) {
@@ -599,7 +1116,153 @@ public class RedisTemplateService {
                 }
                 return null;
             }
-        });
+        }));
         return objectList;
     }
+
+    /**
+     * 创建批量操作构建器，入队的各类型操作通过一次pipeline执行
+     *
+     * @return RedisBatch
+     * @Author fuGaga
+     * @Date 2021/5/10 10:12
+     **/
+    public RedisBatch batch() {
+        return new RedisBatch(redisTemplate, hotKeyDetector, false);
+    }
+
+    /**
+     * 创建批量操作构建器
+     *
+     * @param atomic true=使用MULTI/EXEC原子执行整批命令
+     * @return RedisBatch
+     * @Author fuGaga
+     * @Date 2021/5/10 10:12
+     **/
+    public RedisBatch batch(final boolean atomic) {
+        return new RedisBatch(redisTemplate, hotKeyDetector, atomic);
+    }
+
+    /**
+     * 执行读操作，开启resilience时带超时、熔断、隔离和兜底
+     *
+     * @param operation 操作分类
+     * @param key       Redis键
+     * @param call      兜底缓存的调用标识，不需要兜底传null
+     * @param action    读操作
+     */
+    private <T> T read(final String operation, final String key, final String call, final Function<RedisTemplate, T> action) {
+        if (redisResilience == null) {
+            return action.apply(redisTemplate);
+        }
+        return redisResilience.read(operation, key, call, action);
+    }
+
+    /**
+     * 执行写操作，开启resilience时带超时、熔断和隔离，并使兜底缓存失效
+     *
+     * @param key    Redis键
+     * @param action 写操作
+     */
+    private <T> T write(final String key, final Function<RedisTemplate, T> action) {
+        return write(WRITE, Collections.singletonList(key), action);
+    }
+
+    /**
+     * 执行涉及多个key的写操作
+     *
+     * @param operation 操作分类，阻塞命令使用blocking
+     * @param keys      写入的Redis键
+     * @param action    写操作
+     */
+    private <T> T write(final String operation, final Collection<String> keys, final Function<RedisTemplate, T> action) {
+        if (redisResilience == null) {
+            return action.apply(redisTemplate);
+        }
+        for (String key : keys) {
+            redisResilience.invalidateStale(key);
+        }
+        return redisResilience.write(operation, action);
+    }
+
+    /**
+     * 记录读访问，用于热点key探测
+     */
+    private void recordRead(final String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.recordRead(key);
+        }
+    }
+
+    /**
+     * 记录写访问，用于热点key探测，同时使本地缓存失效
+     */
+    private void recordWrite(final String key) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.recordWrite(key);
+        }
+    }
+
+    /**
+     * 集合运算结果key：前缀+运算+输入key的md5，满足交换律的运算对输入key排序
+     */
+    private static String setOpKey(final String op, final String key, final List<String> otherKeys, final boolean commutative) {
+        List<String> keys = new ArrayList<>(otherKeys.size() + 1);
+        keys.add(key);
+        keys.addAll(otherKeys);
+        if (commutative) {
+            Collections.sort(keys);
+        }
+        String joined = String.join("\n", keys);
+        return SET_OP_KEY_PREFIX + op + ":" + DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 结果key不存在时执行store运算并设置过期时间，检查、运算和过期在一个lua脚本中原子执行，
+     * 不会留下没有过期时间的结果key
+     *
+     * @param command 存储运算命令，如SINTERSTORE
+     * @param zset    是否为需要numkeys参数的zset运算
+     */
+    private String storeCached(final String destKey, final long seconds, final String command, final boolean zset,
+                               final String key, final List<String> otherKeys) {
+        final List<String> keys = new ArrayList<>(otherKeys.size() + 2);
+        keys.add(destKey);
+        keys.add(key);
+        keys.addAll(otherKeys);
+        recordWrite(destKey);
+        write(destKey, t -> t.execute(storeCachedScript, new StringRedisSerializer(), new StringRedisSerializer(), keys,
+                command, String.valueOf(seconds), zset ? "1" : "0"));
+        return destKey;
+    }
+
+    private byte[] rawKey(final String key) {
+        return redisTemplate.getKeySerializer().serialize(key);
+    }
+
+    private byte[][] rawKeys(final String... keys) {
+        byte[][] rawKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rawKeys[i] = rawKey(keys[i]);
+        }
+        return rawKeys;
+    }
+
+    private static List<Long> toLongs(final List<Object> results) {
+        List<Long> longs = new ArrayList<>(results.size());
+        for (Object result : results) {
+            longs.add(result == null ? 0L : ((Number) result).longValue());
+        }
+        return longs;
+    }
+
+    private Object getLocal(final String key) {
+        return hotKeyDetector == null ? null : hotKeyDetector.getLocal(key);
+    }
+
+    private void putLocal(final String key, final Object value) {
+        if (hotKeyDetector != null) {
+            hotKeyDetector.putLocal(key, value);
+        }
+    }
 }
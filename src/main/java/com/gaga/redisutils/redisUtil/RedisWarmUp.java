@@ -0,0 +1,255 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.FileCopyUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动预热
+ * <p>
+ * 应用启动后依次：预先建立并校验连接、预加载lua脚本、执行模拟读写预热序列化器和JIT，并记录各阶段耗时。
+ * 同步模式下预热在ApplicationRunner中完成，应用就绪前即预热完毕；
+ * 异步模式下应用照常就绪，预热结束前{@link RedisWarmUpHealthIndicator}为OUT_OF_SERVICE，
+ * 需把redisWarmUp加入readiness健康分组才能在预热完成前拒绝流量
+ *
+ * @Author fuGaga
+ * @Date 2021/5/24 10:15
+ * @Version 1.0
+ */
+public class RedisWarmUp implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisWarmUp.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    private final RedisUtilsProperties.WarmUp properties;
+
+    private volatile boolean completed;
+
+    private volatile Throwable failure;
+    /**各阶段耗时(ms) */
+    private final Map<String, Long> durations = Collections.synchronizedMap(new LinkedHashMap<>());
+    /**预加载脚本的sha1，资源路径 -> sha1 */
+    private final Map<String, String> scriptShas = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public RedisWarmUp(final RedisUtilsProperties.WarmUp properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (!properties.isAsync()) {
+            warmUp();
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "redis-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 执行预热，失败不影响应用启动
+     * @Author fuGaga
+     * @Date 2021/5/24 10:30
+     * @return void
+     **/
+    public void warmUp() {
+        long start = System.nanoTime();
+        try {
+            timed("connections", this::warmUpConnections);
+            timed("scripts", this::loadScripts);
+            timed("workload", this::runWorkload);
+        } catch (RuntimeException e) {
+            failure = e;
+            log.warn("redis warm-up failed, continue without warm-up", e);
+        } finally {
+            durations.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            log.info("redis warm-up finished in {} ms, phases: {}", durations.get("total"), durations);
+            completed = true;
+        }
+    }
+
+    /**
+     * 配置了连接池时，同时从池中借出配置个数的连接并逐个PING，归还后池中保留这些空闲连接(不超过maxIdle)；
+     * 借出通过pipeline触发，Lettuce即使共享原生连接，pipeline也会从池中借出专用连接，不修改连接工厂的共享设置。
+     * 未配置连接池时借出的连接用完即关闭，不预建连接，只校验默认连接
+     */
+    private void warmUpConnections() {
+        RedisConnectionFactory factory = redisTemplate.getRequiredConnectionFactory();
+        if (isPooled(factory)) {
+            List<RedisConnection> connections = new ArrayList<>(properties.getConnections());
+            try {
+                for (int i = 0; i < properties.getConnections(); i++) {
+                    RedisConnection connection = factory.getConnection();
+                    connections.add(connection);
+                    pingPooled(connection);
+                }
+            } finally {
+                for (RedisConnection connection : connections) {
+                    connection.close();
+                }
+            }
+        } else {
+            log.info("no redis connection pool configured, skip pre-establishing {} connections", properties.getConnections());
+        }
+        RedisConnection connection = factory.getConnection();
+        try {
+            ping(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private boolean isPooled(final RedisConnectionFactory factory) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        if (ClassUtils.isPresent("io.lettuce.core.RedisClient", classLoader) && factory instanceof LettuceConnectionFactory) {
+            return ((LettuceConnectionFactory) factory).getClientConfiguration() instanceof LettucePoolingClientConfiguration;
+        }
+        if (ClassUtils.isPresent("redis.clients.jedis.Jedis", classLoader) && factory instanceof JedisConnectionFactory) {
+            return ((JedisConnectionFactory) factory).getUsePool();
+        }
+        return false;
+    }
+
+    /**
+     * 在pipeline中PING，使连接借出池中的专用连接
+     */
+    private static void pingPooled(final RedisConnection connection) {
+        connection.openPipeline();
+        connection.ping();
+        List<Object> results = connection.closePipeline();
+        if (results.size() != 1 || !"PONG".equalsIgnoreCase(String.valueOf(results.get(0)))) {
+            throw new IllegalStateException("redis connection validation failed");
+        }
+    }
+
+    private static void ping(final RedisConnection connection) {
+        if (!"PONG".equalsIgnoreCase(connection.ping())) {
+            throw new IllegalStateException("redis connection validation failed");
+        }
+    }
+
+    /**
+     * SCRIPT LOAD预加载脚本，后续EVALSHA直接命中
+     */
+    private void loadScripts() {
+        if (properties.getScripts().isEmpty()) {
+            return;
+        }
+        RedisConnection connection = redisTemplate.getRequiredConnectionFactory().getConnection();
+        try {
+            for (String location : properties.getScripts()) {
+                String sha = connection.scriptLoad(readScript(location).getBytes(StandardCharsets.UTF_8));
+                scriptShas.put(location, sha);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * 模拟读写，覆盖value和hash的Jackson序列化路径，结束后删除预热key
+     */
+    @SuppressWarnings("unchecked")
+    private void runWorkload() {
+        if (properties.getIterations() <= 0) {
+            return;
+        }
+        String valueKey = properties.getKeyPrefix() + "value";
+        String hashKey = properties.getKeyPrefix() + "hash";
+        Map<String, Object> sample = new HashMap<>();
+        sample.put("id", 1L);
+        sample.put("name", "warm-up");
+        sample.put("score", 1.0D);
+        sample.put("tags", Arrays.asList("a", "b", "c"));
+        try {
+            for (int i = 0; i < properties.getIterations(); i++) {
+                redisTemplate.opsForValue().set(valueKey, sample, 60, TimeUnit.SECONDS);
+                redisTemplate.opsForValue().get(valueKey);
+                redisTemplate.opsForHash().put(hashKey, String.valueOf(i % 16), sample);
+                redisTemplate.opsForHash().entries(hashKey);
+            }
+        } finally {
+            redisTemplate.delete(Arrays.asList(valueKey, hashKey));
+        }
+    }
+
+    private String readScript(final String location) {
+        Resource resource = resourceLoader.getResource(location);
+        try (Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+            return FileCopyUtils.copyToString(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("can not read lua script " + location, e);
+        }
+    }
+
+    private void timed(final String phase, final Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        durations.put(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * 预热是否已结束(包括失败)
+     *
+     * @return boolean
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * 预热失败原因，成功时为null
+     *
+     * @return java.lang.Throwable
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * 各阶段耗时(ms)
+     *
+     * @return java.util.Map<java.lang.String,java.lang.Long>
+     */
+    public Map<String, Long> getDurations() {
+        synchronized (durations) {
+            return new LinkedHashMap<>(durations);
+        }
+    }
+
+    /**
+     * 预加载脚本的sha1
+     *
+     * @return java.util.Map<java.lang.String,java.lang.String>
+     */
+    public Map<String, String> getScriptShas() {
+        synchronized (scriptShas) {
+            return new LinkedHashMap<>(scriptShas);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.gaga.redisutils.redisUtil;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * 预热健康检查，预热结束前为OUT_OF_SERVICE，可加入readiness分组：
+ * management.endpoint.health.group.readiness.include=readinessState,redisWarmUp
+ * @Author fuGaga
+ * @Date 2021/5/24 11:20
+ * @Version 1.0
+ */
+public class RedisWarmUpHealthIndicator implements HealthIndicator {
+
+    private final RedisWarmUp redisWarmUp;
+
+    public RedisWarmUpHealthIndicator(final RedisWarmUp redisWarmUp) {
+        this.redisWarmUp = redisWarmUp;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = redisWarmUp.isCompleted() ? Health.up() : Health.outOfService();
+        builder.withDetail("durations", redisWarmUp.getDurations());
+        if (redisWarmUp.getFailure() != null) {
+            builder.withDetail("failure", redisWarmUp.getFailure().toString());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,190 @@
+package com.gaga.redisutils.redisUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单层时间轮，用于进程内近期任务的定时触发
+ * <p>
+ * 时间轮覆盖tickMillis*wheelSize的时间范围，超出范围的任务放在最后一格，转到时重新放入；
+ * 任务在ticker线程中执行，必须足够轻量。ticker线程在第一次schedule时才启动，没有待触发任务时休眠直到下一次schedule
+ *
+ * @Author fuGaga
+ * @Date 2021/6/2 15:10
+ * @Version 1.0
+ */
+public class TimingWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickMillis;
+    private final ConcurrentLinkedQueue<Task>[] buckets;
+
+    /**时间轮起始时间 */
+    private final long startMillis;
+    /**已处理到的tick */
+    private volatile long currentTick;
+    /**待触发的任务数 */
+    private final AtomicInteger pending = new AtomicInteger();
+    /**schedule与ticker空闲时跳过tick之间的锁 */
+    private final Object lock = new Object();
+
+    private final String name;
+    private volatile Thread ticker;
+    private volatile boolean running = true;
+
+    /**
+     * @param tickMillis 每格时长(ms)
+     * @param wheelSize  格数
+     * @param name       ticker线程名
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(final long tickMillis, final int wheelSize, final String name) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis and wheelSize must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new ConcurrentLinkedQueue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.startMillis = System.currentTimeMillis();
+        this.name = name;
+    }
+
+    /**
+     * 时间轮覆盖的时间范围(ms)
+     *
+     * @return long
+     */
+    public long getHorizonMillis() {
+        return tickMillis * buckets.length;
+    }
+
+    /**
+     * 在deadlineMillis时刻触发任务
+     *
+     * @param deadlineMillis 触发时间戳(ms)
+     * @param task           任务
+     */
+    public void schedule(final long deadlineMillis, final Runnable task) {
+        if (!running) {
+            return;
+        }
+        synchronized (lock) {
+            pending.incrementAndGet();
+            offer(new Task(deadlineMillis, task));
+        }
+        Thread thread = ticker;
+        if (thread == null) {
+            thread = start();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * 停止时间轮，未触发的任务被丢弃
+     */
+    public void stop() {
+        running = false;
+        Thread thread = ticker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * ticker线程是否已启动
+     *
+     * @return boolean
+     */
+    boolean isStarted() {
+        return ticker != null;
+    }
+
+    private synchronized Thread start() {
+        if (ticker == null) {
+            Thread thread = new Thread(this::tickLoop, name);
+            thread.setDaemon(true);
+            thread.start();
+            ticker = thread;
+        }
+        return ticker;
+    }
+
+    private void offer(final Task task) {
+        long tick = Math.max((task.deadlineMillis - startMillis) / tickMillis, currentTick + 1);
+        // 超出范围的任务放到最后一格
+        tick = Math.min(tick, currentTick + buckets.length);
+        buckets[(int) (tick % buckets.length)].offer(task);
+    }
+
+    private void tickLoop() {
+        while (running) {
+            boolean idle;
+            synchronized (lock) {
+                idle = pending.get() == 0;
+                if (idle) {
+                    // 没有待触发任务，直接跳到当前时间对应的tick，不再逐格空转
+                    currentTick = Math.max(currentTick, (System.currentTimeMillis() - startMillis) / tickMillis);
+                }
+            }
+            if (idle) {
+                LockSupport.park(this);
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            long nowTick = (now - startMillis) / tickMillis;
+            long nextTick = currentTick + 1;
+            if (nextTick > nowTick) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(startMillis + nextTick * tickMillis - now));
+                continue;
+            }
+            // 加锁取出到期格中的任务并推进tick，之前schedule到这些格的任务都能被取出。
+            // 长时间休眠后被唤醒时直接跳到当前tick，只处理其间有任务的格，最多检查一圈
+            List<Task> due = new ArrayList<>();
+            synchronized (lock) {
+                long lastTick = Math.min(nowTick, currentTick + buckets.length);
+                for (long tick = nextTick; tick <= lastTick; tick++) {
+                    ConcurrentLinkedQueue<Task> bucket = buckets[(int) (tick % buckets.length)];
+                    for (Task task = bucket.poll(); task != null; task = bucket.poll()) {
+                        due.add(task);
+                    }
+                }
+                currentTick = nowTick;
+            }
+            for (Task task : due) {
+                if (task.deadlineMillis > now + tickMillis) {
+                    // 超出范围放在这些格的任务，重新放入
+                    synchronized (lock) {
+                        offer(task);
+                    }
+                    continue;
+                }
+                pending.decrementAndGet();
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException e) {
+                    log.error("timing wheel task failed", e);
+                }
+            }
+        }
+    }
+
+    private static final class Task {
+        private final long deadlineMillis;
+        private final Runnable runnable;
+
+        private Task(final long deadlineMillis, final Runnable runnable) {
+            this.deadlineMillis = deadlineMillis;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -1,14 +1,31 @@
 package com.gaga.redisutils;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
 import com.gaga.redisutils.redisUtil.*;
 
-@SpringBootTest
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 校验自动装配能启动并注册RedisTemplateService，启动时不连接redis
+ */
+@SpringBootTest(classes = RedisutilsApplicationTests.TestConfig.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
 class RedisutilsApplicationTests {
 
+        @Autowired
+        private RedisTemplateService redisTemplateService;
+
         @Test
         void contextLoads() {
+                assertNotNull(redisTemplateService);
+        }
+
+        @Configuration
+        @EnableAutoConfiguration
+        static class TestConfig {
         }
 
 }
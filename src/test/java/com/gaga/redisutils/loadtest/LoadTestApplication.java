@@ -0,0 +1,13 @@
+package com.gaga.redisutils.loadtest;
+
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * 压测用的最小应用，只依赖starter的自动装配
+ * @Author fuGaga
+ * @Date 2021/8/3 10:00
+ * @Version 1.0
+ */
+@SpringBootApplication
+public class LoadTestApplication {
+}
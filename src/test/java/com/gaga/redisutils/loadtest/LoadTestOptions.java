@@ -0,0 +1,61 @@
+package com.gaga.redisutils.loadtest;
+
+/**
+ * 压测参数，通过系统属性配置，如 -Dloadtest.threads=64 -Dloadtest.readRatio=0.9
+ * @Author fuGaga
+ * @Date 2021/8/3 10:30
+ * @Version 1.0
+ */
+public class LoadTestOptions {
+
+    /**本次压测名称，结果保存为target/loadtest/{name}.properties */
+    final String name = string("name", "run-" + System.currentTimeMillis());
+    /**读操作占比 */
+    final double readRatio = number("readRatio", 0.8);
+    /**分布式锁操作占比，按Zipf分布选择锁key */
+    final double lockRatio = number("lockRatio", 0.0);
+    /**批量(pipeline)操作占比，剩余为写操作 */
+    final double batchRatio = number("batchRatio", 0.05);
+    /**每个批量操作包含的读写命令数，读写比例与单条操作相同 */
+    final int batchSize = (int) number("batchSize", 16);
+    /**key空间大小 */
+    final long keySpace = (long) number("keySpace", 100000);
+    /**Zipf倾斜度，0为均匀分布 */
+    final double skew = number("skew", 0.99);
+    /**value最小、最大字节数 */
+    final int minValueSize = (int) number("minValueSize", 128);
+    final int maxValueSize = (int) number("maxValueSize", 1024);
+    /**写入value的过期时间(秒) */
+    final long valueTtl = (long) number("valueTtl", 600);
+    /**并发数 */
+    final int threads = (int) number("threads", 32);
+    /**是否使用虚拟线程(JDK 21+) */
+    final boolean virtualThreads = Boolean.parseBoolean(string("virtualThreads", "false"));
+    /**预热秒数，不计入结果 */
+    final long warmUpSeconds = (long) number("warmUpSeconds", 10);
+    /**压测秒数 */
+    final long durationSeconds = (long) number("durationSeconds", 60);
+    /**redis-server可执行文件，配置了spring.redis.host时不启动本地redis */
+    final String redisServer = string("redisServer", "redis-server");
+    /**对比的基线结果文件 */
+    final String baseline = string("baseline", null);
+    /**吞吐下降或延迟上升超过该比例视为退化 */
+    final double regressionThreshold = number("regressionThreshold", 0.1);
+
+    private static String string(final String name, final String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    private static double number(final String name, final double defaultValue) {
+        String value = System.getProperty("loadtest." + name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    @Override
+    public String toString() {
+        return "name=" + name + ", readRatio=" + readRatio + ", lockRatio=" + lockRatio + ", batchRatio=" + batchRatio
+                + ", batchSize=" + batchSize + ", keySpace=" + keySpace
+                + ", skew=" + skew + ", valueSize=" + minValueSize + "-" + maxValueSize + ", threads=" + threads
+                + ", virtualThreads=" + virtualThreads + ", warmUp=" + warmUpSeconds + "s, duration=" + durationSeconds + "s";
+    }
+}
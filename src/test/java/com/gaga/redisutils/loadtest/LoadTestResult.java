@@ -0,0 +1,107 @@
+package com.gaga.redisutils.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 压测结果：各操作的延迟分布(微秒)和吞吐，可保存为properties文件并与基线对比
+ * @Author fuGaga
+ * @Date 2021/8/3 10:40
+ * @Version 1.0
+ */
+public class LoadTestResult {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Properties metrics = new Properties();
+
+    LoadTestResult() {
+    }
+
+    private LoadTestResult(final Properties metrics) {
+        this.metrics.putAll(metrics);
+    }
+
+    /**
+     * 记录一个操作成功调用的延迟分布和失败次数
+     */
+    void add(final String operation, final Histogram histogram, final long errors, final double seconds) {
+        put(operation + ".count", histogram.getTotalCount());
+        put(operation + ".errors", errors);
+        long calls = histogram.getTotalCount() + errors;
+        put(operation + ".errorRate", calls == 0 ? 0 : (double) errors / calls);
+        put(operation + ".throughput", histogram.getTotalCount() / seconds);
+        for (double percentile : PERCENTILES) {
+            put(operation + ".p" + format(percentile), histogram.getValueAtPercentile(percentile));
+        }
+        put(operation + ".max", histogram.getMaxValue());
+    }
+
+    void put(final String metric, final double value) {
+        metrics.setProperty(metric, String.valueOf(value));
+    }
+
+    double get(final String metric) {
+        return Double.parseDouble(metrics.getProperty(metric, "0"));
+    }
+
+    void save(final File file, final String comment) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            metrics.store(writer, comment);
+        }
+    }
+
+    static LoadTestResult load(final File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new LoadTestResult(properties);
+    }
+
+    /**
+     * 与基线对比并打印变化，吞吐下降、p99以上延迟或错误率上升超过threshold视为退化，
+     * 基线没有错误时出现任何错误即视为退化
+     *
+     * @return 退化的指标
+     */
+    List<String> compare(final LoadTestResult baseline, final double threshold, final PrintStream out) {
+        List<String> regressions = new ArrayList<>();
+        SortedSet<String> names = new TreeSet<>(baseline.metrics.stringPropertyNames());
+        out.printf("%-28s %14s %14s %9s%n", "metric", "baseline", "current", "change");
+        for (String name : names) {
+            if (!metrics.containsKey(name)) {
+                continue;
+            }
+            double before = baseline.get(name);
+            double after = get(name);
+            double change = before == 0 ? 0 : (after - before) / before;
+            boolean regressed = false;
+            if (name.endsWith(".throughput")) {
+                regressed = change < -threshold;
+            } else if (name.endsWith(".p99") || name.endsWith(".p99.9")) {
+                regressed = change > threshold;
+            } else if (name.endsWith(".errorRate")) {
+                regressed = after > 0 && after > before * (1 + threshold);
+            }
+            if (regressed) {
+                regressions.add(name);
+            }
+            out.printf("%-28s %14.1f %14.1f %+8.1f%%%s%n", name, before, after, change * 100, regressed ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    void print(final PrintStream out) {
+        for (String name : new TreeSet<>(metrics.stringPropertyNames())) {
+            out.printf("%-28s %14.1f%n", name, get(name));
+        }
+    }
+
+    private static String format(final double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
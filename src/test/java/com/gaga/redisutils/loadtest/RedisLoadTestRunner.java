@@ -0,0 +1,245 @@
+package com.gaga.redisutils.loadtest;
+
+import com.gaga.redisutils.redisUtil.RedisBatch;
+import com.gaga.redisutils.redisUtil.RedisLock;
+import com.gaga.redisutils.redisUtil.RedisTemplateService;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 端到端压测：按配置的读、写、锁、批量操作比例、key空间和Zipf倾斜度、value大小和并发数，
+ * 通过自动装配的RedisTemplateService和RedisLock压测本地启动的redis-server，
+ * 用HdrHistogram记录各操作成功调用的延迟分布和吞吐，失败单独计数，结果保存到target/loadtest并可与基线对比。
+ * 类名不以Test结尾，不在mvn test中执行。
+ * <pre>
+ * mvn -Ploadtest test-compile exec:java -Dloadtest.name=baseline -Dloadtest.threads=64
+ * mvn -Ploadtest test-compile exec:java -Dloadtest.name=current -Dloadtest.baseline=target/loadtest/baseline.properties
+ * </pre>
+ * 配置了spring.redis.host时压测该地址，不启动本地redis-server；其余spring.redis.*系统属性(如连接池)照常生效
+ *
+ * @Author fuGaga
+ * @Date 2021/8/3 11:00
+ * @Version 1.0
+ */
+public class RedisLoadTestRunner {
+
+    private static final String KEY_PREFIX = "loadtest:";
+    private static final String LOCK_PREFIX = "loadtest:lock:";
+    private static final String[] OPERATIONS = {"read", "write", "lock", "batch"};
+
+    private final LoadTestOptions options;
+    private final RedisTemplateService redisTemplateService;
+    private final RedisLock redisLock;
+    private final ZipfianGenerator keys;
+    private final String[] values;
+
+    private final Map<String, Recorder> recorders = new HashMap<>();
+    private final Map<String, LongAdder> errors = new HashMap<>();
+
+    private volatile boolean running = true;
+
+    RedisLoadTestRunner(final LoadTestOptions options, final RedisTemplateService redisTemplateService, final RedisLock redisLock) {
+        this.options = options;
+        this.redisTemplateService = redisTemplateService;
+        this.redisLock = redisLock;
+        this.keys = new ZipfianGenerator(options.keySpace, options.skew);
+        // 预先生成不同大小的value，避免压测时构造字符串影响结果
+        this.values = new String[64];
+        for (int i = 0; i < values.length; i++) {
+            int size = options.minValueSize + ThreadLocalRandom.current().nextInt(options.maxValueSize - options.minValueSize + 1);
+            char[] chars = new char[size];
+            Arrays.fill(chars, (char) ('a' + i % 26));
+            values[i] = new String(chars);
+        }
+        for (String operation : OPERATIONS) {
+            // 最大记录60秒，3位有效数字
+            recorders.put(operation, new Recorder(TimeUnit.SECONDS.toMicros(60), 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions();
+        File outputDir = new File("target/loadtest");
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("can not create " + outputDir);
+        }
+        RedisServerProcess server = null;
+        List<String> properties = new ArrayList<>();
+        if (System.getProperty("spring.redis.host") == null) {
+            server = new RedisServerProcess(options.redisServer, new File(outputDir, "redis-server.log"));
+            properties.add("spring.redis.host=127.0.0.1");
+            properties.add("spring.redis.port=" + server.getPort());
+        }
+        int exitCode;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadTestApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .properties(properties.toArray(new String[0]))
+                .run(args)) {
+            RedisLoadTestRunner loadTest = new RedisLoadTestRunner(options, context.getBean(RedisTemplateService.class),
+                    context.getBean(RedisLock.class));
+            exitCode = loadTest.run(outputDir);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * 执行压测并输出结果
+     *
+     * @return 0=成功；1=相对基线有退化
+     */
+    int run(final File outputDir) throws Exception {
+        System.out.println("load test: " + options);
+        preload();
+        ExecutorService executor = newExecutor();
+        try {
+            for (int i = 0; i < options.threads; i++) {
+                executor.execute(this::workerLoop);
+            }
+            TimeUnit.SECONDS.sleep(options.warmUpSeconds);
+            // 丢弃预热阶段的记录
+            for (String operation : OPERATIONS) {
+                recorders.get(operation).reset();
+                errors.get(operation).reset();
+            }
+            long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(options.durationSeconds);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            LoadTestResult result = new LoadTestResult();
+            long total = 0;
+            for (String operation : OPERATIONS) {
+                Histogram histogram = recorders.get(operation).getIntervalHistogram();
+                long errorCount = errors.get(operation).sum();
+                if (histogram.getTotalCount() == 0 && errorCount == 0) {
+                    continue;
+                }
+                total += histogram.getTotalCount();
+                result.add(operation, histogram, errorCount, seconds);
+                try (PrintStream out = new PrintStream(new FileOutputStream(
+                        new File(outputDir, options.name + "-" + operation + ".hgrm")), true, "UTF-8")) {
+                    histogram.outputPercentileDistribution(out, 1.0);
+                }
+            }
+            result.put("total.throughput", total / seconds);
+            result.save(new File(outputDir, options.name + ".properties"), options.toString());
+            result.print(System.out);
+
+            if (options.baseline != null) {
+                List<String> regressions = result.compare(LoadTestResult.load(new File(options.baseline)),
+                        options.regressionThreshold, System.out);
+                if (!regressions.isEmpty()) {
+                    System.out.println("regressions: " + regressions);
+                    return 1;
+                }
+            }
+            return 0;
+        } finally {
+            running = false;
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 先写满key空间，避免读操作全部未命中
+     */
+    private void preload() {
+        RedisBatch batch = redisTemplateService.batch();
+        for (long i = 0; i < options.keySpace; i++) {
+            batch.setValueTimeout(KEY_PREFIX + i, values[(int) (i % values.length)], options.valueTtl);
+            if (batch.size() == 1000) {
+                batch.execute();
+                batch = redisTemplateService.batch();
+            }
+        }
+        batch.execute();
+    }
+
+    private void workerLoop() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            double dice = random.nextDouble();
+            String operation = dice < options.readRatio ? "read"
+                    : dice < options.readRatio + options.lockRatio ? "lock"
+                    : dice < options.readRatio + options.lockRatio + options.batchRatio ? "batch" : "write";
+            long index = keys.next();
+            long start = System.nanoTime();
+            try {
+                switch (operation) {
+                    case "read":
+                        redisTemplateService.getValue(KEY_PREFIX + index);
+                        break;
+                    case "lock":
+                        // 锁key同样按Zipf分布，热点key上的锁竞争更激烈
+                        if (redisLock.lock(LOCK_PREFIX + index)) {
+                            redisLock.delLock(LOCK_PREFIX + index);
+                        }
+                        break;
+                    case "batch":
+                        runBatch(random);
+                        break;
+                    default:
+                        redisTemplateService.setValueTimeout(KEY_PREFIX + index, values[random.nextInt(values.length)],
+                                options.valueTtl);
+                        break;
+                }
+            } catch (RuntimeException e) {
+                // 失败只计数，不计入延迟分布，避免快速失败拉低延迟
+                errors.get(operation).increment();
+                continue;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            recorders.get(operation).recordValue(Math.min(micros, TimeUnit.SECONDS.toMicros(60)));
+        }
+    }
+
+    /**
+     * 一次pipeline发送batchSize个读写，读写比例与单条操作相同
+     */
+    private void runBatch(final ThreadLocalRandom random) {
+        RedisBatch batch = redisTemplateService.batch();
+        double single = 1 - options.lockRatio - options.batchRatio;
+        double readShare = single > 0 ? options.readRatio / single : 1;
+        for (int i = 0; i < options.batchSize; i++) {
+            String key = KEY_PREFIX + keys.next();
+            if (random.nextDouble() < readShare) {
+                batch.getValue(key);
+            } else {
+                batch.setValueTimeout(key, values[random.nextInt(values.length)], options.valueTtl);
+            }
+        }
+        batch.execute();
+    }
+
+    /**
+     * 平台线程池或虚拟线程(JDK 21+，通过反射调用，编译仍兼容1.8)
+     */
+    private ExecutorService newExecutor() throws Exception {
+        if (options.virtualThreads) {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+        return Executors.newFixedThreadPool(options.threads);
+    }
+}
@@ -0,0 +1,69 @@
+package com.gaga.redisutils.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在本机空闲端口启动一个不持久化的redis-server，压测结束后关闭
+ * @Author fuGaga
+ * @Date 2021/8/3 10:20
+ * @Version 1.0
+ */
+public class RedisServerProcess implements AutoCloseable {
+
+    private final Process process;
+    private final int port;
+
+    /**
+     * @param executable redis-server可执行文件路径
+     * @param logFile    redis-server日志文件
+     */
+    public RedisServerProcess(final String executable, final File logFile) throws IOException, InterruptedException {
+        this.port = freePort();
+        ProcessBuilder builder = new ProcessBuilder(executable, "--port", String.valueOf(port), "--bind", "127.0.0.1",
+                "--save", "", "--appendonly", "no");
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(logFile);
+        this.process = builder.start();
+        awaitStarted();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(5, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    private void awaitStarted() throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("redis-server exited with code " + process.exitValue());
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        process.destroyForcibly();
+        throw new IOException("redis-server did not start on port " + port);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
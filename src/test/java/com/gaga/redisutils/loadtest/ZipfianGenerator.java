@@ -0,0 +1,69 @@
+package com.gaga.redisutils.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf分布的key下标生成器(Gray等人的算法，与YCSB一致)，skew=0时退化为均匀分布
+ * @Author fuGaga
+ * @Date 2021/8/3 10:10
+ * @Version 1.0
+ */
+public class ZipfianGenerator {
+
+    private final long items;
+    private final double theta;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+
+    /**
+     * @param items key空间大小
+     * @param skew  倾斜度，0为均匀分布，常用0.99
+     */
+    public ZipfianGenerator(final long items, final double skew) {
+        if (items <= 0 || skew < 0 || skew == 1.0) {
+            throw new IllegalArgumentException("items must be positive, skew must be >= 0 and != 1");
+        }
+        this.items = items;
+        this.theta = skew;
+        if (skew == 0) {
+            this.alpha = 0;
+            this.zetan = 0;
+            this.eta = 0;
+            return;
+        }
+        double zeta2 = zeta(2, skew);
+        this.zetan = zeta(items, skew);
+        this.alpha = 1.0 / (1.0 - skew);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - skew)) / (1 - zeta2 / zetan);
+    }
+
+    /**
+     * 下一个key下标，范围[0, items)，下标越小越热
+     *
+     * @return long
+     */
+    public long next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (theta == 0) {
+            return random.nextLong(items);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private static double zeta(final long n, final double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,62 @@
+package com.gaga.redisutils.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ZipfianGenerator的取值范围和分布形状
+ *
+ * @Author fuGaga
+ * @Date 2021/8/10 16:30
+ * @Version 1.0
+ */
+class ZipfianGeneratorTests {
+
+    private static final int SAMPLES = 200000;
+
+    @Test
+    void valuesStayWithinItems() {
+        ZipfianGenerator generator = new ZipfianGenerator(50, 0.99);
+        for (int i = 0; i < SAMPLES; i++) {
+            long value = generator.next();
+            assertTrue(value >= 0 && value < 50, "out of range: " + value);
+        }
+    }
+
+    @Test
+    void lowRanksAreHottest() {
+        long[] counts = sample(new ZipfianGenerator(100, 0.99), 100);
+        for (int i = 1; i < counts.length; i++) {
+            assertTrue(counts[0] > counts[i], "rank " + i + " is hotter than rank 0");
+        }
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[2] && counts[2] > counts[10]);
+        // 下标0的概率为1/zeta(100, 0.99)，约19%
+        double share = (double) counts[0] / SAMPLES;
+        assertTrue(share > 0.17 && share < 0.21, "rank 0 share " + share);
+    }
+
+    @Test
+    void zeroSkewIsUniform() {
+        long[] counts = sample(new ZipfianGenerator(10, 0), 10);
+        for (long count : counts) {
+            assertTrue(Math.abs(count - SAMPLES / 10) < SAMPLES / 100, "uneven count " + count);
+        }
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ZipfianGenerator(0, 0.99));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfianGenerator(100, -0.1));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfianGenerator(100, 1.0));
+    }
+
+    private static long[] sample(final ZipfianGenerator generator, final int items) {
+        long[] counts = new long[items];
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[(int) generator.next()]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,87 @@
+package com.gaga.redisutils.redisUtil;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HotKeySketch的计数估算与top-K裁剪
+ *
+ * @Author fuGaga
+ * @Date 2021/8/10 11:00
+ * @Version 1.0
+ */
+class HotKeySketchTests {
+
+    @Test
+    void topKeepsHeaviestKeysAfterTrim() {
+        HotKeySketch sketch = new HotKeySketch(4096, 4, 10);
+        // 冷key先进入候选集，多次触发裁剪
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 100; i++) {
+                sketch.add("cold:" + i, 1);
+            }
+            for (int i = 0; i < 10; i++) {
+                sketch.add("hot:" + i, 100 + i);
+            }
+        }
+
+        List<Map.Entry<String, Long>> top = sketch.top();
+        assertEquals(10, top.size());
+        Set<String> keys = new HashSet<>();
+        for (Map.Entry<String, Long> entry : top) {
+            keys.add(entry.getKey());
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(keys.contains("hot:" + i), "missing hot:" + i + " in " + top);
+        }
+        assertEquals("hot:9", top.get(0).getKey());
+        for (int i = 1; i < top.size(); i++) {
+            assertTrue(top.get(i - 1).getValue() >= top.get(i).getValue());
+        }
+    }
+
+    @Test
+    void estimateNeverUndercounts() {
+        HotKeySketch sketch = new HotKeySketch(256, 4, 5);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("key:" + i, i % 7 + 1);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sketch.estimate("key:" + i) >= i % 7 + 1);
+        }
+    }
+
+    @Test
+    void rowsDoNotShareStringHashCode() {
+        // "Aa"与"BB"的String.hashCode相同，按字节哈希后不应互相计数
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        HotKeySketch sketch = new HotKeySketch(4096, 4, 5);
+        sketch.add("Aa", 100);
+        assertEquals(100, sketch.estimate("Aa"));
+        assertEquals(0, sketch.estimate("BB"));
+    }
+
+    @Test
+    void murmur3MatchesReferenceVectors() {
+        assertEquals(0, HotKeySketch.murmur3(new byte[0], 0));
+        assertEquals(0x248BFA47, HotKeySketch.murmur3("hello".getBytes(StandardCharsets.UTF_8), 0));
+        assertEquals(0x2E4FF723, HotKeySketch.murmur3("The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    @Test
+    void resetClearsCountsAndCandidates() {
+        HotKeySketch sketch = new HotKeySketch(64, 2, 3);
+        sketch.add("key", 10);
+        sketch.reset();
+        assertEquals(0, sketch.estimate("key"));
+        assertTrue(sketch.top().isEmpty());
+    }
+}
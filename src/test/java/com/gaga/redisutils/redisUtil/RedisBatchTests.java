@@ -0,0 +1,121 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsConfig;
+import com.gaga.redisutils.loadtest.RedisServerProcess;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 在真实redis-server上校验批量操作每个Response与其命令的结果一一对应，包括MULTI/EXEC模式。
+ * 通过-Dredis.server指定redis-server路径，找不到时跳过
+ *
+ * @Author fuGaga
+ * @Date 2021/8/10 10:00
+ * @Version 1.0
+ */
+class RedisBatchTests {
+
+    private static RedisServerProcess server;
+    private static LettuceConnectionFactory factory;
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        try {
+            server = new RedisServerProcess(System.getProperty("redis.server", "redis-server"),
+                    File.createTempFile("redis-batch-tests", ".log"));
+        } catch (IOException e) {
+            assumeTrue(false, "redis-server not available: " + e.getMessage());
+        }
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", server.getPort()));
+        factory.afterPropertiesSet();
+        redisTemplate = new RedisUtilsConfig().redisTemplate(factory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        if (factory != null) {
+            factory.destroy();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @BeforeEach
+    void flush() {
+        redisTemplate.execute(connection -> {
+            connection.flushDb();
+            return null;
+        }, true);
+    }
+
+    @Test
+    void pipelinedResultsAlignWithCommands() {
+        assertResultsAligned(false);
+    }
+
+    @Test
+    void atomicResultsAlignWithCommands() {
+        assertResultsAligned(true);
+    }
+
+    @Test
+    void atomicBatchWithSingleCommand() {
+        redisTemplate.opsForValue().set("batch:single", "value");
+        RedisBatch batch = new RedisBatch(redisTemplate, null, true);
+        RedisBatch.Response<Object> value = batch.getValue("batch:single");
+        batch.execute();
+        assertEquals("value", value.get());
+    }
+
+    private void assertResultsAligned(final boolean atomic) {
+        redisTemplate.opsForValue().set("batch:existing", "old");
+        RedisBatch batch = new RedisBatch(redisTemplate, null, atomic);
+        RedisBatch.Response<Boolean> set = batch.setValue("batch:value", "v1");
+        RedisBatch.Response<Object> get = batch.getValue("batch:value");
+        RedisBatch.Response<Object> missing = batch.getValue("batch:missing");
+        RedisBatch.Response<Boolean> hashPut = batch.hashPut("batch:hash", "f1", 1);
+        RedisBatch.Response<Map<Object, Object>> hashGetAll = batch.hashGetAll("batch:hash");
+        RedisBatch.Response<Long> setSet = batch.setSet("batch:set", "a", "b");
+        RedisBatch.Response<Set<Object>> setAll = batch.getSetAll("batch:set");
+        RedisBatch.Response<Boolean> zsetSet = batch.zsetSet("batch:zset", "z", 1.0);
+        RedisBatch.Response<Set<Object>> zsetGet = batch.zsetGet("batch:zset", 0, -1);
+        RedisBatch.Response<Long> listPush = batch.listPush("batch:list", "l1");
+        RedisBatch.Response<Boolean> expire = batch.expire("batch:list", 10, TimeUnit.SECONDS);
+        RedisBatch.Response<Long> del = batch.delKey("batch:existing", "batch:missing");
+        batch.execute();
+
+        assertTrue(set.get());
+        assertEquals("v1", get.get());
+        assertNull(missing.get());
+        assertTrue(hashPut.get());
+        assertEquals(Collections.singletonMap("f1", 1), hashGetAll.get());
+        assertEquals(2L, setSet.get());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("a", "b")), setAll.get());
+        assertTrue(zsetSet.get());
+        assertEquals(Collections.singleton("z"), zsetGet.get());
+        assertEquals(1L, listPush.get());
+        assertTrue(expire.get());
+        assertEquals(1L, del.get());
+    }
+}
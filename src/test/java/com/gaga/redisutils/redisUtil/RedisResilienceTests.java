@@ -0,0 +1,244 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 熔断器状态切换、延迟百分位、命令分类和对冲读
+ *
+ * @Author fuGaga
+ * @Date 2021/8/10 15:00
+ * @Version 1.0
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+class RedisResilienceTests {
+
+    private static final long OPEN_MILLIS = 50;
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        RedisResilience.CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+        assertEquals(RedisResilience.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        RedisResilience.CircuitBreaker breaker = newBreaker();
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertEquals(RedisResilience.State.CLOSED, breaker.state());
+        breaker.onFailure();
+        assertEquals(RedisResilience.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void oldFailuresLeaveSlidingWindow() {
+        RedisResilience.CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        // 窗口10次，后面全部成功把前3次失败挤出窗口
+        for (int i = 0; i < 10; i++) {
+            breaker.onSuccess();
+        }
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(RedisResilience.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void halfOpenProbeSuccessCloses() throws InterruptedException {
+        RedisResilience.CircuitBreaker breaker = openedBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.allowRequest());
+        assertEquals(RedisResilience.State.HALF_OPEN, breaker.state());
+        // 半开状态只放行一个探测请求
+        assertFalse(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(RedisResilience.State.CLOSED, breaker.state());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void halfOpenProbeFailureReopens() throws InterruptedException {
+        RedisResilience.CircuitBreaker breaker = openedBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(RedisResilience.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void releasedProbeCanBeRetried() throws InterruptedException {
+        RedisResilience.CircuitBreaker breaker = openedBreaker();
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.allowRequest());
+        breaker.release();
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void concurrentOutcomesKeepWindowConsistent() throws InterruptedException {
+        RedisResilience.CircuitBreaker breaker = newBreaker();
+        CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    breaker.allowRequest();
+                    breaker.onSuccess();
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(RedisResilience.State.CLOSED, breaker.state());
+        // 并发记录后窗口仍是10次调用，4次失败未达到50%，第5次失败熔断
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+        assertEquals(RedisResilience.State.CLOSED, breaker.state());
+        breaker.onFailure();
+        assertEquals(RedisResilience.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void onlyConnectionAndTimeoutErrorsAreFailures() {
+        assertTrue(RedisResilience.isFailure(new RedisConnectionFailureException("refused")));
+        assertTrue(RedisResilience.isFailure(new QueryTimeoutException("timeout")));
+        assertFalse(RedisResilience.isFailure(new InvalidDataAccessApiUsageException("WRONGTYPE")));
+        assertFalse(RedisResilience.isFailure(new SerializationException("bad value")));
+        assertFalse(RedisResilience.isFailure(new IllegalStateException()));
+    }
+
+    @Test
+    void percentileOfRecordedLatencies() {
+        RedisResilience.LatencyTracker tracker = new RedisResilience.LatencyTracker(1024);
+        assertEquals(0, tracker.percentile(95));
+        for (int i = 100; i >= 1; i--) {
+            tracker.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(95), tracker.percentile(95));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), tracker.percentile(50));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tracker.percentile(100));
+    }
+
+    @Test
+    void percentileOnlyCoversRecentSamples() {
+        RedisResilience.LatencyTracker tracker = new RedisResilience.LatencyTracker(10);
+        for (int i = 1; i <= 20; i++) {
+            tracker.record(i);
+        }
+        assertEquals(20, tracker.percentile(100));
+        assertEquals(11, tracker.percentile(10));
+    }
+
+    @Test
+    void commandsMapToOperations() {
+        assertEquals(RedisResilience.READ, RedisResilience.operationOf("GET"));
+        assertEquals(RedisResilience.BULK, RedisResilience.operationOf("HGETALL"));
+        assertEquals(RedisResilience.WRITE, RedisResilience.operationOf("SET"));
+        assertEquals(RedisResilience.WRITE, RedisResilience.operationOf("EVALSHA"));
+        assertNull(RedisResilience.operationOf("BLPOP"));
+    }
+
+    @Test
+    void hedgedReadRunsPrimaryOnCallerThreadAndUsesReplicaOnTimeout() throws Exception {
+        RedisTemplate primary = mock(RedisTemplate.class);
+        RedisResilience resilience = newHedgingResilience(primary);
+        AtomicReference<Thread> primaryThread = new AtomicReference<>();
+        AtomicReference<Thread> replicaThread = new AtomicReference<>();
+        try {
+            Object value = resilience.read(RedisResilience.READ, "key", null, template -> {
+                if (template == primary) {
+                    primaryThread.set(Thread.currentThread());
+                    sleep(100);
+                    throw new QueryTimeoutException("primary timed out");
+                }
+                replicaThread.set(Thread.currentThread());
+                return "replica";
+            });
+            assertEquals("replica", value);
+            assertEquals(Thread.currentThread(), primaryThread.get());
+            assertTrue(replicaThread.get().getName().startsWith("redis-hedge-"));
+            assertEquals(1, resilience.getHedgedCount());
+            assertEquals(1, resilience.getTimeoutCount());
+        } finally {
+            resilience.destroy();
+        }
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() throws Exception {
+        RedisTemplate primary = mock(RedisTemplate.class);
+        RedisResilience resilience = newHedgingResilience(primary);
+        try {
+            assertEquals("primary", resilience.read(RedisResilience.READ, "key", null,
+                    template -> template == primary ? "primary" : "replica"));
+            Thread.sleep(50);
+            assertEquals(0, resilience.getHedgedCount());
+        } finally {
+            resilience.destroy();
+        }
+    }
+
+    private static RedisResilience newHedgingResilience(final RedisTemplate primary) {
+        RedisUtilsProperties.Resilience properties = new RedisUtilsProperties.Resilience();
+        properties.setHedgeEnabled(true);
+        properties.setHedgeMinDelay(Duration.ofMillis(20));
+        properties.setDefaultTimeout(Duration.ofMillis(500));
+        RedisResilience resilience = new RedisResilience(properties);
+        ReflectionTestUtils.setField(resilience, "redisTemplate", primary);
+        ReflectionTestUtils.setField(resilience, "replicaRedisTemplate", mock(RedisTemplate.class));
+        return resilience;
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RedisResilience.CircuitBreaker newBreaker() {
+        RedisUtilsProperties.Resilience properties = new RedisUtilsProperties.Resilience();
+        properties.setSlidingWindowSize(10);
+        properties.setMinimumCalls(4);
+        properties.setFailureRateThreshold(50);
+        properties.setOpenDuration(Duration.ofMillis(OPEN_MILLIS));
+        return new RedisResilience.CircuitBreaker(properties);
+    }
+
+    private static RedisResilience.CircuitBreaker openedBreaker() {
+        RedisResilience.CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+        assertEquals(RedisResilience.State.OPEN, breaker.state());
+        return breaker;
+    }
+}
@@ -0,0 +1,132 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsConfig;
+import com.gaga.redisutils.loadtest.RedisServerProcess;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 在真实redis-server上校验HyperLogLog和bitmap操作。
+ * 通过-Dredis.server指定redis-server路径，找不到时跳过
+ *
+ * @Author fuGaga
+ * @Date 2021/8/12 11:00
+ * @Version 1.0
+ */
+class RedisTemplateServiceTests {
+
+    private static RedisServerProcess server;
+    private static LettuceConnectionFactory factory;
+    private static RedisTemplateService redisTemplateService;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        try {
+            server = new RedisServerProcess(System.getProperty("redis.server", "redis-server"),
+                    File.createTempFile("redis-template-service-tests", ".log"));
+        } catch (IOException e) {
+            assumeTrue(false, "redis-server not available: " + e.getMessage());
+        }
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", server.getPort()));
+        factory.afterPropertiesSet();
+        redisTemplateService = new RedisTemplateService();
+        redisTemplateService.redisTemplate = new RedisUtilsConfig().redisTemplate(factory);
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        if (factory != null) {
+            factory.destroy();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @BeforeEach
+    void flush() {
+        redisTemplateService.redisTemplate.execute(connection -> {
+            connection.flushDb();
+            return null;
+        }, true);
+    }
+
+    @Test
+    void hyperLogLogCountsDistinctValues() {
+        assertEquals(1, redisTemplateService.hllAdd("uv:day1", "u1", "u2", "u3"));
+        assertEquals(0, redisTemplateService.hllAdd("uv:day1", "u1"));
+        redisTemplateService.hllAdd("uv:day2", "u3", "u4");
+
+        assertEquals(3, redisTemplateService.hllCount("uv:day1"));
+        assertEquals(4, redisTemplateService.hllCount("uv:day1", "uv:day2"));
+        assertEquals(0, redisTemplateService.hllCount("uv:missing"));
+
+        assertEquals(4, redisTemplateService.hllMerge("uv:week", "uv:day1", "uv:day2"));
+        assertEquals(4, redisTemplateService.hllCount("uv:week"));
+    }
+
+    @Test
+    void batchHyperLogLogKeepsKeyOrder() {
+        Map<String, List<String>> keyValues = new LinkedHashMap<>();
+        keyValues.put("uv:a", Arrays.asList("u1", "u2"));
+        keyValues.put("uv:b", Collections.singletonList("u1"));
+        keyValues.put("uv:empty", Collections.emptyList());
+        redisTemplateService.batchHllAdd(keyValues);
+
+        assertEquals(Arrays.asList(2L, 1L, 0L, 0L),
+                redisTemplateService.batchHllCount(Arrays.asList("uv:a", "uv:b", "uv:empty", "uv:missing")));
+    }
+
+    @Test
+    void bitmapSetGetAndCount() {
+        assertFalse(redisTemplateService.bitSet("active:day1", 7, true));
+        assertTrue(redisTemplateService.bitSet("active:day1", 7, true));
+        redisTemplateService.batchBitSet("active:day1", Arrays.asList(1L, 100L, 10000L), true);
+
+        assertTrue(redisTemplateService.bitGet("active:day1", 100));
+        assertFalse(redisTemplateService.bitGet("active:day1", 2));
+        assertEquals(4, redisTemplateService.bitCount("active:day1"));
+        assertEquals(0, redisTemplateService.bitCount("active:missing"));
+
+        redisTemplateService.bitSet("active:day2", 100, true);
+        assertEquals(Arrays.asList(4L, 1L, 0L),
+                redisTemplateService.batchBitCount(Arrays.asList("active:day1", "active:day2", "active:missing")));
+    }
+
+    @Test
+    void bitOperationsAcrossBitmaps() {
+        redisTemplateService.batchBitSet("active:day1", Arrays.asList(1L, 2L, 3L), true);
+        redisTemplateService.batchBitSet("active:day2", Arrays.asList(2L, 3L, 4L), true);
+
+        assertEquals(1, redisTemplateService.bitOp(RedisStringCommands.BitOperation.AND, "active:both",
+                "active:day1", "active:day2"));
+        assertEquals(2, redisTemplateService.bitCount("active:both"));
+
+        assertEquals(4, redisTemplateService.bitOpCount(RedisStringCommands.BitOperation.OR, "active:any", 60,
+                "active:day1", "active:day2"));
+        long ttl = redisTemplateService.redisTemplate.getExpire("active:any");
+        assertTrue(ttl > 0 && ttl <= 60);
+
+        assertEquals(2, redisTemplateService.bitOpCount(RedisStringCommands.BitOperation.XOR, "active:either", -1,
+                "active:day1", "active:day2"));
+        assertEquals(-1, (long) redisTemplateService.redisTemplate.getExpire("active:either"));
+    }
+}
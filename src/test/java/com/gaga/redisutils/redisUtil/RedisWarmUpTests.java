@@ -0,0 +1,116 @@
+package com.gaga.redisutils.redisUtil;
+
+import com.gaga.redisutils.RedisUtilsConfig;
+import com.gaga.redisutils.RedisUtilsProperties;
+import com.gaga.redisutils.loadtest.RedisServerProcess;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 在真实redis-server上校验预热从连接池借出连接且不修改连接工厂的共享设置。
+ * 通过-Dredis.server指定redis-server路径，找不到时跳过
+ *
+ * @Author fuGaga
+ * @Date 2021/8/12 10:00
+ * @Version 1.0
+ */
+class RedisWarmUpTests {
+
+    private static RedisServerProcess server;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        try {
+            server = new RedisServerProcess(System.getProperty("redis.server", "redis-server"),
+                    File.createTempFile("redis-warm-up-tests", ".log"));
+        } catch (IOException e) {
+            assumeTrue(false, "redis-server not available: " + e.getMessage());
+        }
+    }
+
+    @AfterAll
+    static void stopServer() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void pooledConnectionsStayIdleInPool() {
+        GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(8);
+        poolConfig.setMaxIdle(8);
+        LettuceConnectionFactory factory = newFactory(LettucePoolingClientConfiguration.builder().poolConfig(poolConfig).build());
+        try {
+            long before = connectedClients(factory);
+            RedisWarmUp warmUp = newWarmUp(factory, 4);
+            warmUp.warmUp();
+
+            assertTrue(warmUp.isCompleted());
+            assertNull(warmUp.getFailure());
+            assertTrue(factory.getShareNativeConnection());
+            // 共享连接之外，池中保留4个空闲连接
+            assertEquals(before + 4, connectedClients(factory));
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    @Test
+    void withoutPoolOnlySharedConnectionIsValidated() {
+        LettuceConnectionFactory factory = newFactory(LettuceClientConfiguration.defaultConfiguration());
+        try {
+            long before = connectedClients(factory);
+            RedisWarmUp warmUp = newWarmUp(factory, 4);
+            warmUp.warmUp();
+
+            assertNull(warmUp.getFailure());
+            assertTrue(factory.getShareNativeConnection());
+            assertEquals(before, connectedClients(factory));
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private static LettuceConnectionFactory newFactory(final LettuceClientConfiguration clientConfiguration) {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", server.getPort()), clientConfiguration);
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    private static RedisWarmUp newWarmUp(final LettuceConnectionFactory factory, final int connections) {
+        RedisUtilsProperties.WarmUp properties = new RedisUtilsProperties.WarmUp();
+        properties.setConnections(connections);
+        properties.setIterations(10);
+        RedisWarmUp warmUp = new RedisWarmUp(properties);
+        ReflectionTestUtils.setField(warmUp, "redisTemplate", new RedisUtilsConfig().redisTemplate(factory));
+        ReflectionTestUtils.setField(warmUp, "resourceLoader", new DefaultResourceLoader());
+        return warmUp;
+    }
+
+    private static long connectedClients(final LettuceConnectionFactory factory) {
+        RedisTemplate<String, Object> template = new RedisUtilsConfig().redisTemplate(factory);
+        Properties info = template.execute((RedisCallback<Properties>) connection -> connection.info("clients"));
+        return Long.parseLong(info.getProperty("connected_clients"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.gaga.redisutils.redisUtil;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TimingWheel的触发时间、超出范围任务的重新放入和ticker懒启动
+ *
+ * @Author fuGaga
+ * @Date 2021/8/10 14:00
+ * @Version 1.0
+ */
+class TimingWheelTests {
+
+    private static final long TICK = 5;
+
+    private TimingWheel wheel;
+
+    @AfterEach
+    void stop() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void tickerStartsOnFirstSchedule() {
+        wheel = new TimingWheel(TICK, 16, "timing-wheel-test");
+        assertFalse(wheel.isStarted());
+        wheel.schedule(System.currentTimeMillis() + 10, () -> { });
+        assertTrue(wheel.isStarted());
+    }
+
+    @Test
+    void firesAroundDeadline() throws InterruptedException {
+        wheel = new TimingWheel(TICK, 64, "timing-wheel-test");
+        long deadline = System.currentTimeMillis() + 50;
+        assertFiredAt(deadline);
+    }
+
+    @Test
+    void rebucketsTasksBeyondHorizon() throws InterruptedException {
+        // 覆盖范围8*5=40ms，200ms后的任务要绕多圈
+        wheel = new TimingWheel(TICK, 8, "timing-wheel-test");
+        long deadline = System.currentTimeMillis() + 200;
+        assertFiredAt(deadline);
+    }
+
+    @Test
+    void firesTasksScheduledAfterIdle() throws InterruptedException {
+        wheel = new TimingWheel(TICK, 16, "timing-wheel-test");
+        assertFiredAt(System.currentTimeMillis() + 20);
+        // 空闲一段时间(超过一圈)后再投递，仍按时触发
+        Thread.sleep(150);
+        assertFiredAt(System.currentTimeMillis() + 30);
+    }
+
+    @Test
+    void pastDeadlineFiresOnNextTick() throws InterruptedException {
+        wheel = new TimingWheel(TICK, 16, "timing-wheel-test");
+        assertFiredAt(System.currentTimeMillis() - 1000);
+    }
+
+    @Test
+    void catchesUpAfterFallingBehindMoreThanOneRound() throws InterruptedException {
+        // 覆盖范围8*5=40ms，第一个任务阻塞ticker 200ms，之后一次跳到当前tick
+        wheel = new TimingWheel(TICK, 8, "timing-wheel-test");
+        long now = System.currentTimeMillis();
+        wheel.schedule(now + 10, () -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CountDownLatch overdue = new CountDownLatch(1);
+        wheel.schedule(now + 20, overdue::countDown);
+        assertFiredAt(now + 300);
+        assertTrue(overdue.await(1, TimeUnit.SECONDS), "overdue task was not fired");
+    }
+
+    private void assertFiredAt(final long deadline) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        wheel.schedule(deadline, () -> {
+            firedAt.set(System.currentTimeMillis());
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "task was not fired");
+        // 最多提前一格触发
+        assertTrue(firedAt.get() >= deadline - TICK, "fired " + (deadline - firedAt.get()) + "ms early");
+    }
+}